@@ -0,0 +1,238 @@
+package com.maxim;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Evaluates an expression with tiered execution: it starts out walking the tree with
+ * evaluate, and is promoted as it gets evaluated more often, first to the flattened
+ * schedule of a FormulaSet and then to straight-line bytecode generated by ExpressionCompiler.
+ *
+ * Promotions are prepared on a background compiler thread and installed with a single
+ * volatile write, so evaluation never waits for them. Expressions above COMPILE_LIMIT
+ * nodes stop at the flattened tier, since the JIT does not compile huge methods. If building
+ * a tier fails, the expression stays at the tier it reached and the failure is kept for
+ * getCompileFailure(), so it is not attempted again on every evaluation.
+ * Time spent per tier is estimated by timing one evaluation in TIMING_SAMPLE, since
+ * reading the clock costs more than a compiled evaluation.
+ *
+ * An AdaptiveExpression may be shared between threads.
+ */
+public class AdaptiveExpression {
+
+   /**
+    * The ways an AdaptiveExpression can be evaluated, from slowest to fastest
+    */
+   public enum Tier { INTERPRETED, FLATTENED, COMPILED }
+
+   /**
+    * The largest expression, in nodes, that is compiled to a bytecode class
+    */
+   public static final int COMPILE_LIMIT = ExpressionCompiler.MAX_NODES;
+
+   /**
+    * One evaluation in TIMING_SAMPLE is timed
+    */
+   public static final int TIMING_SAMPLE = 64;
+
+   private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "expression-compiler");
+      t.setDaemon(true);
+      return t;
+   });
+
+   /**
+    * An evaluation strategy together with the tier it belongs to
+    */
+   private static final class Implementation {
+      final Tier tier;
+      final ToIntFunction<int[]> function;
+
+      Implementation(Tier tier, ToIntFunction<int[]> function) {
+         this.tier = tier;
+         this.function = function;
+      }
+   }
+
+   private final Expression expr;
+   private final String[] variables;
+   private final long flattenThreshold;
+   private final long compileThreshold;
+
+   private volatile Implementation current;
+   private final AtomicLong count = new AtomicLong();
+   private final AtomicBoolean promoting = new AtomicBoolean();
+   private volatile RuntimeException compileFailure;
+   private final LongAdder[] evaluations = new LongAdder[Tier.values().length];
+   private final LongAdder[] nanos = new LongAdder[Tier.values().length];
+
+   /**
+    * Create the expression, promoted after 1000 and 100000 evaluations
+    * @param expr the expression to evaluate
+    */
+   public AdaptiveExpression(Expression expr) {
+      this(expr, 1000, 100000);
+   }
+
+   /**
+    * Create the expression
+    * @param expr the expression to evaluate
+    * @param flattenThreshold the number of evaluations after which it is flattened
+    * @param compileThreshold the number of evaluations after which it is compiled
+    */
+   public AdaptiveExpression(Expression expr, long flattenThreshold, long compileThreshold) {
+      this.expr = expr;
+      this.variables = expr.getVariables().toArray(new String[0]);
+      this.flattenThreshold = flattenThreshold;
+      this.compileThreshold = compileThreshold;
+      this.current = new Implementation(Tier.INTERPRETED, null);
+
+      for(int i = 0; i < evaluations.length; i++) {
+         evaluations[i] = new LongAdder();
+         nanos[i] = new LongAdder();
+      }
+   }
+
+   /**
+    * @return the variables in the order used by evaluate(int[]), as given by getVariables()
+    */
+   public String[] getVariables() {
+      return variables.clone();
+   }
+
+   /**
+    * Evaluates the expression given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+      Implementation impl = current;
+      boolean timed = ThreadLocalRandom.current().nextInt(TIMING_SAMPLE) == 0;
+      long start = timed ? System.nanoTime() : 0L;
+      int result;
+
+      if(impl.tier == Tier.INTERPRETED) {
+         result = expr.evaluate(assignments);
+      } else {
+         int[] values = new int[variables.length];
+         for(int i = 0; i < values.length; i++) {
+            values[i] = assignments.get(variables[i]);
+         }
+         result = impl.function.applyAsInt(values);
+      }
+
+      if(timed) {
+         nanos[impl.tier.ordinal()].add((System.nanoTime() - start) * TIMING_SAMPLE);
+      }
+      record(impl.tier);
+      return result;
+   }
+
+   /**
+    * Evaluates the expression given the values of the variables
+    * @param values the value of each variable, in getVariables() order
+    * @return the result of evaluating the expression with the given values
+    */
+   public int evaluate(int[] values) {
+      Implementation impl = current;
+      boolean timed = ThreadLocalRandom.current().nextInt(TIMING_SAMPLE) == 0;
+      long start = timed ? System.nanoTime() : 0L;
+      int result;
+
+      if(impl.tier == Tier.INTERPRETED) {
+         HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+         for(int i = 0; i < values.length; i++) {
+            assignments.put(variables[i], values[i]);
+         }
+         result = expr.evaluate(assignments);
+      } else {
+         result = impl.function.applyAsInt(values);
+      }
+
+      if(timed) {
+         nanos[impl.tier.ordinal()].add((System.nanoTime() - start) * TIMING_SAMPLE);
+      }
+      record(impl.tier);
+      return result;
+   }
+
+   /**
+    * @return the tier currently used to evaluate the expression
+    */
+   public Tier getTier() {
+      return current.tier;
+   }
+
+   /**
+    * @param tier a tier
+    * @return the number of evaluations done in the tier
+    */
+   public long getEvaluations(Tier tier) {
+      return evaluations[tier.ordinal()].sum();
+   }
+
+   /**
+    * @param tier a tier
+    * @return an estimate of the total time spent evaluating in the tier, in nanoseconds
+    */
+   public long getNanos(Tier tier) {
+      return nanos[tier.ordinal()].sum();
+   }
+
+   /**
+    * @return the exception that stopped the expression from being promoted, or null if no promotion has failed
+    */
+   public RuntimeException getCompileFailure() {
+      return compileFailure;
+   }
+
+   /**
+    * Counts an evaluation and starts a promotion when the next threshold is crossed
+    */
+   private void record(Tier tier) {
+      evaluations[tier.ordinal()].increment();
+
+      if(tier == Tier.COMPILED || compileFailure != null || (tier == Tier.FLATTENED && expr.size() > COMPILE_LIMIT)) {
+         return; // nothing left to promote to
+      }
+
+      long n = count.incrementAndGet();
+      long threshold = tier == Tier.INTERPRETED ? flattenThreshold : compileThreshold;
+      if(n >= threshold && promoting.compareAndSet(false, true)) {
+         COMPILER.execute(() -> promote(tier));
+      }
+   }
+
+   /**
+    * Builds the implementation of the tier after the given one and installs it
+    * @param from the tier being left
+    */
+   private void promote(Tier from) {
+      try {
+         if(current.tier != from) {
+            return; // a late request from a thread that saw the old tier
+         }
+         if(from == Tier.INTERPRETED) {
+            FormulaSet flat = new FormulaSet(expr);
+            ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[flat.nodeCount() + 1]);
+            current = new Implementation(Tier.FLATTENED, values -> {
+               int[] work = scratch.get();
+               flat.evaluate(values, 0, work, work, work.length - 1); // the result goes in the spare last slot
+               return work[work.length - 1];
+            });
+         } else {
+            current = new Implementation(Tier.COMPILED, ExpressionCompiler.compile(expr, variables));
+         }
+      } catch(RuntimeException e) {
+         compileFailure = e;  // set before promoting is cleared, so no evaluation asks again
+      } finally {
+         promoting.set(false);
+      }
+   }
+}
@@ -0,0 +1,93 @@
+package com.maxim;
+
+/**
+ * A reusable block of variable assignments, one row of int values per assignment
+ * with the variables in a fixed order.
+ *
+ * Batches are obtained from an EvaluationProcessor, filled and handed back to it through
+ * onNext; the processor recycles them once they are evaluated, so a steady stream of
+ * assignments needs no allocation per row.
+ */
+public class AssignmentBatch {
+
+   private final int width;
+   private final int capacity;
+   private final int[] values;
+   private int size;
+
+   /**
+    * scratch space reserved for whoever evaluates the batch
+    */
+   final int[] work;
+
+   /**
+    * Create the batch
+    * @param width the number of variables in each row
+    * @param capacity the maximum number of rows
+    * @param workSize the scratch space needed to evaluate one row
+    */
+   AssignmentBatch(int width, int capacity, int workSize) {
+      this.width = width;
+      this.capacity = capacity;
+      this.values = new int[width * capacity];
+      this.work = new int[workSize];
+   }
+
+   /**
+    * Appends a row
+    * @param row the value of each variable, in the order given by the processor's getVariables()
+    * @throws IllegalStateException if the batch is full
+    */
+   public void add(int... row) {
+      if(row.length != width) {
+         throw new IllegalArgumentException("expected " + width + " values, got " + row.length);
+      }
+      if(isFull()) {
+         throw new IllegalStateException("batch is full");
+      }
+      System.arraycopy(row, 0, values, size * width, width);
+      size++;
+   }
+
+   /**
+    * @return the number of rows in the batch
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * @return the maximum number of rows in the batch
+    */
+   public int capacity() {
+      return capacity;
+   }
+
+   /**
+    * @return true if no more rows can be added
+    */
+   public boolean isFull() {
+      return size == capacity;
+   }
+
+   /**
+    * Removes every row
+    */
+   public void clear() {
+      size = 0;
+   }
+
+   /**
+    * @return the number of variables in each row
+    */
+   int width() {
+      return width;
+   }
+
+   /**
+    * @return the rows, one after the other
+    */
+   int[] values() {
+      return values;
+   }
+}
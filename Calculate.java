@@ -7,6 +7,11 @@ import java.io.IOException;
 public class Calculate {
 
    public static void main(String[] args) throws IOException {
+      if(args.length == 2 && args[0].equals("--serve")) {
+         new EvaluationServer(Integer.parseInt(args[1])).serve();
+         return;
+      }
+
       Scanner userIn = new Scanner(System.in);
       boolean anotherExpression = true;
 
@@ -0,0 +1,106 @@
+package com.maxim;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map holding at most capacity entries, evicting with the CLOCK algorithm: a hit marks
+ * its entry, and when the map is full the eviction hand skips (and unmarks) marked entries
+ * and evicts the first unmarked one. Entries that keep being used therefore stay, while
+ * the cache never has to start over. Lookups never lock; only inserting a new entry does.
+ *
+ * A ClockCache may be shared between threads.
+ */
+class ClockCache<K, V> {
+
+   private final int capacity;
+   private final ConcurrentHashMap<K, Entry<K, V>> entries;
+   private final ArrayList<Entry<K, V>> clock;
+   private int hand;
+
+   /**
+    * Create the cache
+    * @param capacity the maximum number of entries kept
+    */
+   ClockCache(int capacity) {
+      if(capacity < 1) {
+         throw new IllegalArgumentException("capacity must be positive");
+      }
+      this.capacity = capacity;
+      this.entries = new ConcurrentHashMap<K, Entry<K, V>>(capacity * 2);
+      this.clock = new ArrayList<Entry<K, V>>(capacity);
+   }
+
+   /**
+    * A cached value and its CLOCK reference bit
+    */
+   private static final class Entry<K, V> {
+      final K key;
+      final V value;
+      volatile boolean referenced;
+
+      Entry(K key, V value) {
+         this.key = key;
+         this.value = value;
+      }
+   }
+
+   /**
+    * @param key a key
+    * @return the value cached for the key, or null if there is none
+    */
+   V get(K key) {
+      Entry<K, V> entry = entries.get(key);
+      if(entry == null) {
+         return null;
+      }
+      if(!entry.referenced) {
+         entry.referenced = true;  // skip the write when already set, to keep the line shared
+      }
+      return entry.value;
+   }
+
+   /**
+    * Adds a value unless the key is already cached, evicting an entry if the cache is full
+    * @param key a key
+    * @param value the value for the key
+    * @return the value now cached for the key, which is an earlier one if another thread added it first
+    */
+   synchronized V putIfAbsent(K key, V value) {
+      Entry<K, V> existing = entries.get(key);
+      if(existing != null) {
+         return existing.value;
+      }
+
+      Entry<K, V> entry = new Entry<K, V>(key, value);
+      if(clock.size() < capacity) {
+         clock.add(entry);
+      } else {
+         while(clock.get(hand).referenced) {
+            clock.get(hand).referenced = false;
+            hand = (hand + 1) % capacity;
+         }
+         entries.remove(clock.get(hand).key);
+         clock.set(hand, entry);
+         hand = (hand + 1) % capacity;
+      }
+      entries.put(key, entry);
+      return value;
+   }
+
+   /**
+    * @return the number of cached entries
+    */
+   int size() {
+      return entries.size();
+   }
+
+   /**
+    * Removes every entry
+    */
+   synchronized void clear() {
+      entries.clear();
+      clock.clear();
+      hand = 0;
+   }
+}
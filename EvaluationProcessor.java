@@ -0,0 +1,142 @@
+package com.maxim;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reactive stage evaluating an expression against a stream of assignment batches.
+ *
+ * Each incoming AssignmentBatch is evaluated on the given executor, and an int[] holding
+ * the result of every row is published downstream in the order the batches arrived. At
+ * most maxInFlight batches are requested from upstream before their results are published,
+ * and publishing waits for downstream demand, so memory stays bounded however fast the
+ * source is. Batches come from acquireBatch() and are recycled after evaluation, so rows
+ * never go through a HashMap.
+ */
+public class EvaluationProcessor extends SubmissionPublisher<int[]> implements Flow.Processor<AssignmentBatch, int[]> {
+
+   private final FormulaSet formula;
+   private final int width;
+   private final Executor executor;
+   private final int batchSize;
+   private final int maxInFlight;
+   private final ConcurrentLinkedQueue<AssignmentBatch> pool = new ConcurrentLinkedQueue<AssignmentBatch>();
+   private final AtomicInteger pooled = new AtomicInteger();
+
+   private Flow.Subscription upstream;
+
+   /**
+    * the publication of the latest batch; each batch publishes only after the one before it
+    */
+   private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+   /**
+    * Create the processor
+    * @param expr the expression to evaluate
+    * @param executor the executor evaluating the batches
+    * @param batchSize the number of rows in each batch from acquireBatch()
+    * @param maxInFlight the maximum number of batches requested but not yet published
+    */
+   public EvaluationProcessor(Expression expr, Executor executor, int batchSize, int maxInFlight) {
+      if(batchSize < 1 || maxInFlight < 1) {
+         throw new IllegalArgumentException("batchSize and maxInFlight must be positive");
+      }
+      this.formula = new FormulaSet(expr);
+      this.width = formula.getVariables().length;
+      this.executor = executor;
+      this.batchSize = batchSize;
+      this.maxInFlight = maxInFlight;
+   }
+
+   /**
+    * @return the variables in the order batch rows hold them, sorted like getVariables()
+    */
+   public String[] getVariables() {
+      return formula.getVariables();
+   }
+
+   /**
+    * @return an empty batch, recycled from an earlier one when possible
+    */
+   public AssignmentBatch acquireBatch() {
+      AssignmentBatch batch = pool.poll();
+      if(batch == null) {
+         return new AssignmentBatch(width, batchSize, formula.nodeCount());
+      }
+      pooled.decrementAndGet();
+      return batch;
+   }
+
+   /**
+    * @param batch a batch that is no longer used
+    */
+   private void release(AssignmentBatch batch) {
+      batch.clear();
+      if(pooled.incrementAndGet() <= 2 * maxInFlight) {
+         pool.offer(batch);
+      } else {
+         pooled.decrementAndGet();
+      }
+   }
+
+   @Override
+   public void onSubscribe(Flow.Subscription subscription) {
+      if(upstream != null) {
+         subscription.cancel();
+         return;
+      }
+      upstream = subscription;
+      subscription.request(maxInFlight);
+   }
+
+   @Override
+   public void onNext(AssignmentBatch batch) {
+      if(batch.width() != width || batch.work.length < formula.nodeCount()) {
+         upstream.cancel();
+         onError(new IllegalArgumentException("batch was not acquired from this processor"));
+         return;
+      }
+
+      CompletableFuture<int[]> results = CompletableFuture.supplyAsync(() -> evaluate(batch), executor);
+      tail = tail.thenCombine(results, (ignored, r) -> {
+         release(batch);
+         submit(r);  // blocks while downstream has no demand and its buffer is full
+         upstream.request(1);
+         return (Void) null;
+      }).whenComplete((ignored, failure) -> {
+         if(failure != null && !isClosed()) {
+            upstream.cancel();
+            closeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+         }
+      });
+   }
+
+   @Override
+   public void onError(Throwable throwable) {
+      tail.whenComplete((ignored, failure) -> closeExceptionally(throwable));
+   }
+
+   @Override
+   public void onComplete() {
+      tail.whenComplete((ignored, failure) -> close());
+   }
+
+   /**
+    * @param batch a batch of rows
+    * @return the value of the expression for each row
+    */
+   private int[] evaluate(AssignmentBatch batch) {
+      int[] results = new int[batch.size()];
+      int[] values = batch.values();
+
+      for(int row = 0; row < results.length; row++) {
+         formula.evaluate(values, row * width, batch.work, results, row);
+      }
+      return results;
+   }
+}
@@ -0,0 +1,218 @@
+package com.maxim;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line-delimited TCP server answering expression requests.
+ *
+ * Every request is a single line of space separated tokens:
+ * <pre>
+ *    COMMAND MODE TOKEN... [name=value ...]
+ * </pre>
+ * where COMMAND is one of EVAL, SIMPLIFY, POSTFIX, PREFIX or INFIX, MODE is
+ * infix (i) or postfix (p) and the remaining tokens are the expression. Tokens
+ * of the form name=value assign variables and may appear anywhere after MODE.
+ * Each request is answered by a line starting with OK or ERR, in request order,
+ * so clients may pipeline as many requests as they like. QUIT closes the connection.
+ * Expressions are read with ExpressionBuilder, so a single operand is a valid
+ * expression and a malformed one is reported by the token that breaks it. An
+ * expression nested too deeply to evaluate is answered with ERR expression too large.
+ */
+public class EvaluationServer {
+
+   private static final int CACHE_LIMIT = 10000;
+
+   private final int port;
+   private final ClockCache<String, Formula> cache = new ClockCache<String, Formula>(CACHE_LIMIT);
+
+   /**
+    * A parsed formula together with the results that are reused between requests
+    */
+   private static class Formula {
+      final Expression expr;
+      final Set<String> variables;
+      volatile Expression simplified;
+
+      Formula(Expression expr) {
+         this.expr = expr;
+         this.variables = expr.getVariables();
+      }
+
+      Expression simplified() {
+         Expression s = simplified;
+         if(s == null) {
+            s = expr.simplify();
+            simplified = s;  // racing threads compute the same immutable tree
+         }
+         return s;
+      }
+   }
+
+   /**
+    * Create the server
+    * @param port the TCP port to listen on
+    */
+   public EvaluationServer(int port) {
+      this.port = port;
+   }
+
+   /**
+    * Accepts connections until the process is stopped, serving each one on its own thread
+    */
+   public void serve() throws IOException {
+      ExecutorService connections = connectionExecutor();
+      ServerSocket server = new ServerSocket(port);
+
+      try {
+         System.out.println("Listening on port " + server.getLocalPort());
+         while(true) {
+            Socket socket = server.accept();
+            connections.execute(() -> handle(socket));
+         }
+      } finally {
+         server.close();
+         connections.shutdown();
+      }
+   }
+
+   /**
+    * @return an executor starting one virtual thread per task when the runtime supports them,
+    *         otherwise one platform thread per task
+    */
+   private static ExecutorService connectionExecutor() {
+      try {
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch(ReflectiveOperationException e) {
+         return Executors.newCachedThreadPool();
+      }
+   }
+
+   /**
+    * Serves a single connection until the client disconnects or sends QUIT
+    * @param socket the connected socket
+    */
+   private void handle(Socket socket) {
+      try(Socket s = socket;
+          BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+          BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+
+         String line;
+         while((line = in.readLine()) != null) {
+            if(line.trim().equalsIgnoreCase("QUIT")) {
+               break;
+            }
+            out.write(respond(line));
+            out.write('\n');
+
+            // only flush once every pipelined request that already arrived is answered
+            if(!in.ready()) {
+               out.flush();
+            }
+         }
+         out.flush();
+      } catch(IOException e) {
+         // the client went away, nothing left to answer
+      }
+   }
+
+   /**
+    * @param line a single request line
+    * @return the response line for the request, without the line terminator
+    */
+   String respond(String line) {
+      String[] tokens = line.trim().split("\\s+");
+      if(tokens.length < 3) {
+         return "ERR expected: COMMAND MODE EXPRESSION";
+      }
+
+      String command = tokens[0].toUpperCase();
+      String mode = tokens[1].toLowerCase();
+      if(!mode.equals("infix") && !mode.equals("i") && !mode.equals("postfix") && !mode.equals("p")) {
+         return "ERR unknown mode " + tokens[1];
+      }
+
+      StringBuilder key = new StringBuilder(mode.substring(0, 1));
+      HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+      int exprTokens = 0;
+
+      for(int i = 2; i < tokens.length; i++) {
+         int eq = tokens[i].indexOf('=');
+         if(eq < 0) {
+            key.append(' ').append(tokens[i]);
+            exprTokens++;
+         } else {
+            try {
+               assignments.put(tokens[i].substring(0, eq), Integer.parseInt(tokens[i].substring(eq + 1)));
+            } catch(NumberFormatException e) {
+               return "ERR bad assignment " + tokens[i];
+            }
+         }
+      }
+      if(exprTokens == 0) {
+         return "ERR missing expression";
+      }
+
+      try {
+         Formula formula = lookup(key.toString());
+
+         if(command.equals("EVAL")) {
+            for(String v : formula.variables) {
+               if(!assignments.containsKey(v)) {
+                  return "ERR unassigned variable " + v;
+               }
+            }
+            return "OK " + formula.expr.evaluate(assignments);
+         }
+         if(command.equals("SIMPLIFY")) {
+            return "OK " + formula.simplified().toInfix();
+         }
+         if(command.equals("POSTFIX")) {
+            return "OK " + formula.expr.toPostfix();
+         }
+         if(command.equals("PREFIX")) {
+            return "OK " + formula.expr.toPrefix();
+         }
+         if(command.equals("INFIX")) {
+            return "OK " + formula.expr.toInfix();
+         }
+         return "ERR unknown command " + tokens[0];
+      } catch(IllegalArgumentException e) {
+         return "ERR malformed expression: " + e.getMessage();
+      } catch(ArithmeticException e) {
+         return "ERR division by zero";
+      } catch(StackOverflowError e) {
+         return "ERR expression too large";  // deeper than the recursive walks can go; the thread is still usable
+      } catch(RuntimeException e) {
+         return "ERR internal error";  // never hand JVM exception names to clients
+      }
+   }
+
+   /**
+    * @param key the mode letter followed by the expression tokens
+    * @return the parsed formula, from the cache if it was seen before
+    * @throws IllegalArgumentException if the tokens do not form an expression
+    */
+   private Formula lookup(String key) {
+      Formula formula = cache.get(key);
+      if(formula != null) {
+         return formula;
+      }
+
+      ExpressionBuilder builder = key.charAt(0) == 'p' ? ExpressionBuilder.postfix() : ExpressionBuilder.infix();
+      for(String token : key.substring(2).split(" ")) {
+         builder.accept(token);
+      }
+      return cache.putIfAbsent(key, new Formula(builder.finish()));
+   }
+}
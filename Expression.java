@@ -1,8 +1,11 @@
 package com.maxim;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
@@ -11,7 +14,11 @@ import java.util.Stack;
 import java.util.Arrays;
 
 /**
- * A class representing an abstract arithmetic expression
+ * A class representing an abstract arithmetic expression.
+ * Expressions are immutable: every node's fields are final and no operation
+ * modifies an existing tree, so a single instance can be shared between threads
+ * and evaluated concurrently without synchronization (as long as each caller's
+ * assignments map is not modified while it is being evaluated).
  */
 public abstract class Expression {
 
@@ -38,9 +45,9 @@ public abstract class Expression {
            } else {
 
                if (!stack.empty()) {    // performing the postfix eval. algorithm
-                   var2 = stack.pop();
+                   var2 = stack.pop();  // the right operand is on top
                    var1 = stack.pop();
-                   exp = makeExpression(var2, var1, s);
+                   exp = makeExpression(var1, var2, s);
                    stack.push(exp);
                }
            }
@@ -48,6 +55,17 @@ public abstract class Expression {
        return exp;
    }
 
+   /**
+    * Creates a tree from an expression in postfix notation
+    * @param postfix an array of Strings representing a postfix arithmetic expression
+    * @param rebalance true to rebalance chains of + and * in the result
+    * @return a new Expression that represents postfix
+    */
+   public static Expression expressionFromPostfix(String[] postfix, boolean rebalance) {
+       Expression exp = expressionFromPostfix(postfix);
+       return rebalance && exp != null ? exp.rebalance() : exp;
+   }
+
    /**
     * Creates a tree from an expression in infix notation
     * @param infix an array of Strings representing a infix arithmetic expression
@@ -118,7 +136,27 @@ public abstract class Expression {
 	   }
        return exp;
    }
+
+   /**
+    * Creates a tree from an expression in infix notation
+    * @param infix an array of Strings representing a infix arithmetic expression
+    * @param rebalance true to rebalance chains of + and * in the result
+    * @return a new Expression that represents infix
+    */
+   public static Expression expressionFromInfix(String[] infix, boolean rebalance) {
+       Expression exp = expressionFromInfix(infix);
+       return rebalance && exp != null ? exp.rebalance() : exp;
+   }
       
+   /**
+    * Rebuilds every run of nested sums, and every run of nested products, as a balanced tree,
+    * so a chain of n operands has depth O(log n) instead of O(n). The operands keep their
+    * left to right order. int addition and multiplication are associative even when they
+    * overflow, so the result always evaluates to the same value.
+    * @return an equivalent Expression with balanced chains, sharing the subtrees that did not change
+    */
+   public abstract Expression rebalance();
+
    /**
     * @return a String that represents this expression in prefix notation.
     */
@@ -146,809 +184,261 @@ public abstract class Expression {
    public abstract Expression simplify();
 
    /**
-    * Evaluates the expression given assignments of values to variables.
-    * @param assignments a HashMap from Strings (variable names) to Integers (values).
-    * @return the result of evaluating the expression with the given variable assignments
-    */
-   public abstract int evaluate(HashMap<String, Integer> assignments);
-
-   /**
-    * @return a Set of the variables contained in this expression
-    */
-   public abstract Set<String> getVariables();
-
-    /**
-     * @param obj Expression object
-     * @return compares Expressions, taking commutativity of + and * into account
-     */
-   @Override
-   public abstract boolean equals(Object obj);
-
-
-
-
-
-   /**
-    * Prints the expression as a tree in DOT format for visualization
-    * @param filename the name of the output file
-    */
-   public void drawExpression(String filename) throws IOException {
-
-      BufferedWriter bw = null;
-      FileWriter fw = new FileWriter(filename);
-      bw = new BufferedWriter(fw);
-      
-      bw.write("graph Expression {\n");
-      
-      drawExprHelper(bw);
-      
-      bw.write("}\n");
-      
-      bw.close();
-      fw.close();     
-   }
-
-   /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
-    */
-    protected abstract void drawExprHelper(BufferedWriter bw) throws IOException;
-    
-    //Helper method to make appropriate expressions
-    public static Expression makeExpression(Expression var1, Expression var2, String op) {
-	    Expression exp = null;
-
-	    if(op.equals("+")) {
-		    exp = new SumExpression(var1, var2); // instead of evaluating, make a new expression
-	    }
-
-	    if(op.equals("-")) {
-		    exp = new DifferenceExpression(var1,var2);
-	    }
-
-	    if(op.equals("*")) {
-		    exp = new ProductExpression(var1, var2);
-	    }
-
-	    if(op.equals("/")) {
-		    exp = new QuotientExpression(var1, var2);
-	    }
-   
-	    return exp;
-    }
-   
-}
-
-
-
-
-/**
- * A class representing an abstract operand
- */
-abstract class Operand extends Expression
-{
-}
-
-/**
- * A class representing an expression containing only a single integer value
- */
-class IntegerOperand extends Operand {
-   protected int operand;
-
-   /**
-    * Create the expression
-    * @param operand the integer value this expression represents
+    * Simplifies the expression knowing the range of values of its variables. Subtrees that
+    * are proven constant, and cannot overflow or divide by zero, are replaced by their value
+    * before the usual simplifications are applied.
+    * @param bounds a Map from Strings (variable names) to the Interval of values each can take;
+    *        variables that are not listed can take any value
+    * @return a new Expression equivalent to this one whenever the variables are within bounds
     */
-   public IntegerOperand(int operand)
-   {
-      this.operand = operand;
+   public Expression simplify(Map<String, Interval> bounds) {
+       return simplify(bounds, new Interval[1]);
    }
 
    /**
-    * @return a String that represents this expression in prefix notation
-    */   
-   public String toPrefix() {
-       return Integer.toString(operand);
-   }
-
-   /**
-    * @return a String that represents this expression in postfix notation
-    */  
-   public String toPostfix() {
-       return Integer.toString(operand);
-   }   
-
-   /**
-    * @return a String that represents the expression in infix notation
+    * Simplifies the expression knowing the range of values of its variables
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @param range receives the range of this expression in its first element
+    * @return a new Expression equivalent to this one whenever the variables are within bounds
     */
-   public String toInfix() {
-       return Integer.toString(operand);
-   }
-
-   /**
-    * @return a new Expression mathematically equivalent to this one, but simplified
-    */  
-   public Expression simplify() {
-       return new IntegerOperand(operand);
-   }   
-
-   /**
-    * Evaluates the expression given assignments of values to variables
-    * @param assignments a HashMap from Strings (variable names) to Integers (values)
-    * @return the result of evaluating the expression with the given variable assignments
-    */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return operand;
-   }
-
-   /**
-    * @return a Set of the variables contained in this expression
-    */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       return vars;
-   }
-
-   /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
-    */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || !((obj) instanceof IntegerOperand)) { // if is an integer operand at all!
-	       return false;
-	   }
-       IntegerOperand op = (IntegerOperand) obj; // compare the integer values of the operands
-       
-       return op.operand == this.operand;
-   }   
-
-   /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
-    */
-   protected void drawExprHelper(BufferedWriter bw) throws IOException {
-      bw.write("\tnode"+hashCode()+"[label="+operand+"];\n");
-   }
-}
-
-
-
-
-/**
- * A class representing an expression containing only a single variable
- */
-class VariableOperand extends Operand {
-   protected String variable;
-
-   /**
-    * Create the expression
-    * @param variable the variable name contained with this expression
-    */
-   public VariableOperand(String variable)
-   {
-      this.variable = variable;
-   }
-
-   /**
-    * @return a String that represents this expression in prefix notation
-    */   
-   public String toPrefix() {
-       return variable;
-   }
-    
-    /**
-     * @return a String that represents this expression in postfix notation
-     */  
-    public String toPostfix() {
-        return variable;
-    }   
-
-    /**
-     * @return a String that represents the expression in infix notation
-     */
-    public String toInfix() {
-        return variable;
-    }
-
-   /**
-    * @return a new Expression mathematically equivalent to this one, but simplified
-    */  
-   public Expression simplify() {
-       return new VariableOperand(variable);
-   }   
-
-   /**
-    * Evaluates the expression given assignments of values to variables
-    * @param assignments a HashMap from Strings (variable names) to Integers (values)
-    * @return the result of evaluating the expression with the given variable assignments
-    */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return assignments.get(variable);
-   }
-
-   /**
-    * @return a Set of the variables contained in this expression
-    */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       vars.add(variable);
-       return vars;
-   }
-
-   /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
-    */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || !((obj) instanceof VariableOperand)) {
-	       return false;
-	   }
-       VariableOperand var = (VariableOperand) obj;
-       
-       return var.variable.equals(this.variable); //same as with integer but comparing vars
-   }   
-
-   /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
-    */
-   protected void drawExprHelper(BufferedWriter bw) throws IOException {
-      bw.write("\tnode"+hashCode()+"[label="+variable+"];\n");
-   }   
-}
-
-
-
-
-/**
- * A class representing an expression involving an operator
- */
-abstract class OperatorExpression extends Expression
-{
-   protected Expression left;
-   protected Expression right;
-
-   /**
-    * Create the expression
-    * @param left the expression representing the left operand
-    * @param right the expression representing the right operand
-    */
-   public OperatorExpression(Expression left, Expression right) {
-      this.left = left;
-      this.right = right;
-   }
-
-   /**
-    * @return a string representing the operator
-    */
-   protected abstract String getOperator();     
-   
-   /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
-    */
-   protected void drawExprHelper(BufferedWriter bw) throws IOException {
-      String rootID = "\tnode"+hashCode();
-      bw.write(rootID+"[label=\""+getOperator()+"\"];\n");
-
-      bw.write(rootID + " -- node" + left.hashCode() + ";\n");
-      bw.write(rootID + " -- node" + right.hashCode() + ";\n");
-      left.drawExprHelper(bw);
-      right.drawExprHelper(bw);
-   }   
-    
-    public Set<String> getVariables() {
-	    TreeSet<String> vars = new TreeSet<String>();
-	    vars.addAll(this.left.getVariables());
-	    vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
-	    return vars;
-    }
-}
-
-
-
-
-/**
- * A class representing an expression involving a sum
- */
-class SumExpression extends OperatorExpression {
-
-   /**
-    * Create the expression
-    * @param left the expression representing the left operand
-    * @param right the expression representing the right operand
-    */
-   public SumExpression(Expression left, Expression right)
-   {
-      super(left, right);
-   }
-
-   /**
-    * @return a string representing the operand
-    */
-   protected String getOperator()
-   {
-      return "+";
-   }
-   
-   /**
-    * @return a String that represents this expression in prefix notation.
-    */   
-   public String toPrefix() {
-       return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
-   }
-
-   /**
-    * @return a String that represents this expression in postfix notation.
-    */  
-   public String toPostfix() {
-       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
-   }   
+   protected abstract Expression simplify(Map<String, Interval> bounds, Interval[] range);
 
    /**
-    * @return a String that represents the expression in infix notation
+    * Computes the range of values the expression can take when its variables are within bounds.
+    * A safe range also proves the expression never overflows and never divides by zero.
+    * @param bounds a Map from Strings (variable names) to the Interval of values each can take;
+    *        variables that are not listed can take any value
+    * @return the Interval of values of the expression
     */
-   public String toInfix() {
-       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
-   }
-
-   /**
-    * @return a new Expression mathematically equivalent to this one, but simplified.
-    */  
-   public Expression simplify() {
-
-       Expression myLeft = left.simplify();
-       Expression myRight = right.simplify(); //keep track of the proper Expression
-
-       // if both are integerOps, simply add the values in a new IntOp
-       if(myLeft instanceof IntegerOperand && myRight instanceof IntegerOperand) {
-	       IntegerOperand op1 = (IntegerOperand) myLeft;
-	       IntegerOperand op2 = (IntegerOperand) myRight;
-	       
-	       return new IntegerOperand(op1.operand + op2.operand);
-	   }
-
-       // left int and right expression
-       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
-	       IntegerOperand a = (IntegerOperand) myLeft;
-	       Expression expr = (Expression) myRight;
-	       if(a.operand != 0)
-	           return new SumExpression(a.simplify(), expr.simplify()); // if not zero return the sumExpression
-
-	       else return expr.simplify(); // if 0 return the other
-	   }
-
-       // right int  and left expression
-       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
-	       IntegerOperand b = (IntegerOperand) myRight;
-	       Expression expr1 = (Expression) myLeft;
-	       if(b.operand != 0)
-	           return new SumExpression(b.simplify(), expr1.simplify());
-
-	       else return expr1.simplify();
-	   }
-
-       return new SumExpression(myLeft.simplify(), myRight.simplify());
-   }   
+   public abstract Interval range(Map<String, Interval> bounds);
 
    /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
     * @return the result of evaluating the expression with the given variable assignments
     */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return this.left.evaluate(assignments) + this.right.evaluate(assignments); // simply add
-   }
+   public abstract int evaluate(HashMap<String, Integer> assignments);
 
    /**
-    * @return a Set of the variables contained in this expression
+    * Evaluates the expression like evaluate, but evaluates cheaper operands first and skips
+    * subtrees whose value cannot change the result: a product with a zero operand is zero,
+    * and a division by zero fails before its dividend is evaluated. Skipped subtrees are not
+    * checked, so a missing variable or division by zero inside one of them goes unnoticed.
+    * @param assignments a HashMap from Strings (variable names) to Integers (values).
+    * @return the result of evaluating the expression with the given variable assignments
     */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       vars.addAll(this.left.getVariables());
-       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
-       return vars;
-   }
- 
+   public abstract int evaluateShortCircuit(HashMap<String, Integer> assignments);
 
    /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
+    * @return an estimate of the cost of evaluating this expression, computed when it is built
     */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || (!(obj instanceof SumExpression)))
-           return false;
-      
-       SumExpression sum = (SumExpression) obj;
-
-       // if both left and right are equal
-       return this.left.equals(sum.left) && this.right.equals(sum.right) || sum.left.equals(this.left) && sum.right.equals(this.right);
-   }   
-}
-
-
-
-
-/**
- * A class representing an expression involving an difference
- */
-class DifferenceExpression extends OperatorExpression {
+   public abstract int cost();
 
    /**
-    * Create the expression
-    * @param left the expression representing the left operand
-    * @param right the expression representing the right operand
+    * @return the number of nodes in this expression, computed when it is built
     */
-   public DifferenceExpression(Expression left, Expression right)
-   {
-      super(left, right);
-   }
+   public abstract int size();
 
    /**
-    * @return a string representing the operand
+    * Partially evaluates the expression: the known variables are replaced by their values
+    * and the result is simplified, leaving a smaller residual expression in the other variables.
+    * A SpecializationCache keeps the results for bindings that come back.
+    * @param known a Map from Strings (variable names) to Integers (values) for the fixed variables
+    * @return a simplified Expression equivalent to this one under the known assignments
     */
-   protected String getOperator()
-   {
-      return "-";
+   public Expression specialize(Map<String, Integer> known) {
+      HashMap<String, Expression> constants = new HashMap<String, Expression>();
+      for(Map.Entry<String, Integer> binding : known.entrySet()) {
+         constants.put(binding.getKey(), new IntegerOperand(binding.getValue()));
+      }
+      return substitute(constants).simplify();
    }
 
    /**
-    * @return a String that represents this expression in prefix notation
-    */   
-   public String toPrefix() {
-      return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
-   }
-
-   /**
-    * @return a String that represents this expression in postfix notation.
-    */  
-   public String toPostfix() {
-       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
-   }   
-
-   /**
-    * @return a String that represents the expression in infix notation
+    * Returns a copy of this expression with the subtree at path replaced. Only the operators
+    * on the path are copied; everything else is shared with this expression, so an edit
+    * costs O(depth) however large the tree is.
+    * @param path the way down from the root, one character per step: L for the left operand
+    *        and R for the right operand; the empty path is the root itself
+    * @param replacement the new subtree
+    * @return the edited Expression
+    * @throws IllegalArgumentException if path does not lead to a subtree of this expression
     */
-   public String toInfix() {
-       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
-   }
-
-   /**
-    * @return a new Expression mathematically equivalent to this one, but simplified.
-    */  
-   public Expression simplify() {
-       Expression myLeft = left.simplify();
-       Expression myRight = right.simplify();
+   public Expression replaceAt(String path, Expression replacement) {
+       OperatorExpression[] parents = new OperatorExpression[path.length()];
+       Expression e = this;
 
-       if(left instanceof IntegerOperand && right instanceof IntegerOperand) {
-	       IntegerOperand op1 = (IntegerOperand) left;
-	       IntegerOperand op2 = (IntegerOperand) right;
-	       
-	       return new IntegerOperand(op1.operand - op2.operand);
-	   }
-
-       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
-	       IntegerOperand a = (IntegerOperand) myLeft;
-	       Expression expr = (Expression) myRight;
-
-	       if(a.operand == 0) {
-		       return expr.simplify();
+       for(int i = 0; i < path.length(); i++) {
+	       if(!(e instanceof OperatorExpression)) {
+		       throw new IllegalArgumentException("path " + path + " goes below an operand at step " + i);
 		   }
-	   }
-
-       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
-	       IntegerOperand b = (IntegerOperand) myRight;
-	       Expression expr1 = (Expression) myLeft;
-
-	       if(b.operand == 0) {
-		       return myLeft.simplify();
+	       parents[i] = (OperatorExpression) e;
+	       char step = path.charAt(i);
+	       if(step == 'L') {
+		       e = parents[i].left;
+		   } else if(step == 'R') {
+		       e = parents[i].right;
+		   } else {
+		       throw new IllegalArgumentException("path steps must be L or R, got " + step);
 		   }
 	   }
 
-       // special case if both are variables
-       else if(left instanceof VariableOperand && right instanceof VariableOperand) {
-	       VariableOperand var1 = (VariableOperand) myLeft;
-	       VariableOperand var2 = (VariableOperand) myRight;
-	       
-	       if(var1.equals(var2)) {
-		       return new IntegerOperand(0); // if so, then x - x returns a new 0 IntOp
+       // copy the path back up to the root
+       Expression result = replacement;
+       for(int i = path.length() - 1; i >= 0; i--) {
+	       OperatorExpression parent = parents[i];
+	       if(path.charAt(i) == 'L') {
+		       result = makeExpression(result, parent.right, parent.getOperator());
+		   } else {
+		       result = makeExpression(parent.left, result, parent.getOperator());
 		   }
 	   }
-
-       return new DifferenceExpression(myLeft.simplify(), myRight.simplify());
-     
-   }   
+       return result;
+   }
 
    /**
-    * Evaluates the expression given assignments of values to variables.
-    * @param assignments a HashMap from Strings (variable names) to Integers (values).
-    * @return the result of evaluating the expression with the given variable assignments
+    * Returns a copy of this expression with every occurrence of a variable replaced. Only
+    * the operators above an occurrence are copied; every subtree without the variable is
+    * shared with this expression.
+    * @param variable the name of the variable to replace
+    * @param replacement the expression to put in its place
+    * @return the edited Expression, or this expression if the variable does not occur
     */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return this.left.evaluate(assignments) - this.right.evaluate(assignments); // simply subtract
+   public Expression substitute(String variable, Expression replacement) {
+      return substitute(Collections.singletonMap(variable, replacement));
    }
 
    /**
-    * @return a Set of the variables contained in this expression
+    * Returns a copy of this expression with several variables replaced at once, sharing
+    * every subtree that contains none of them
+    * @param replacements a Map from Strings (variable names) to the expressions to put in their place
+    * @return the edited Expression, or this expression if none of the variables occur
     */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       vars.addAll(this.left.getVariables());
-       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
-       return vars;
-   }
+   public abstract Expression substitute(Map<String, ? extends Expression> replacements);
 
    /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
+    * @return a Set of the variables contained in this expression
     */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || (!(obj instanceof DifferenceExpression)))
-           return false;
-      
-      DifferenceExpression sum = (DifferenceExpression) obj;
-
-       return this.left.equals(sum.left) && this.right.equals(sum.right);
-   }      
-}
-
-
-
+   public abstract Set<String> getVariables();
 
-/**
- * A class representing an expression involving a product
- */
-class ProductExpression extends OperatorExpression {
+    /**
+     * @param obj Expression object
+     * @return compares Expressions, taking commutativity of + and * into account
+     */
+   @Override
+   public abstract boolean equals(Object obj);
 
    /**
-    * Create the expression
-    * @param left the expression representing the left operand
-    * @param right the expression representing the right operand
+    * @return a structural hash code, equal for equal Expressions
     */
-   public ProductExpression(Expression left, Expression right)
-   {
-      super(left, right);
-   }
+   @Override
+   public abstract int hashCode();
 
    /**
-    * @return a string representing the operand
+    * A 64-bit structural fingerprint: equal Expressions have equal fingerprints, and different
+    * ones differ with overwhelming probability. Operator nodes compute theirs from their
+    * operands' fingerprints when they are built, so it never needs a walk of the tree.
+    * @return the fingerprint of this expression
     */
-   protected String getOperator()
-   {
-      return "*";
-   }
+   public abstract long fingerprint();
 
    /**
-    * @return a String that represents this expression in prefix notation.
-    */   
-   public String toPrefix()
-   {
-       return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
-   }
-
-   /**
-    * @return a String that represents this expression in postfix notation.
-    */  
-   public String toPostfix()
-   {
-       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
-   }   
-
-   /**
-    * @return a String that represents the expression in infix notation
+    * Simplifies the expression, reusing results cached by fingerprint. After a small edit
+    * only the operators on the path from the edit to the root are simplified again; every
+    * unchanged subtree is found in the cache.
+    * @param cache the simplified results of earlier calls
+    * @return the same result as simplify()
     */
-   public String toInfix()
-   {
-       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
+   public Expression simplify(SimplifyCache cache) {
+       return simplify();
    }
 
    /**
-    * @return a new Expression mathematically equivalent to this one, but simplified
-    */  
-   public Expression simplify() {
-       Expression myLeft = left.simplify();
-       Expression myRight = right.simplify();
-
-       if(left instanceof IntegerOperand && right instanceof IntegerOperand) {
-	       IntegerOperand op1 = (IntegerOperand) left;
-	       IntegerOperand op2 = (IntegerOperand) right;
-	       
-	       return new IntegerOperand(op1.operand * op2.operand);
-	   }
-
-       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
-	       IntegerOperand a = (IntegerOperand) myLeft;
-	       Expression expr = (Expression) myRight;
-
-	       if(a.operand == 1) {
-		       return expr.simplify(); // if left is 1
-		   }
-
-	       if(a.operand == 0) {
-		       return new IntegerOperand(0); // if right is 0 simply return 0
-		   }
-	   }
-
-       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
-	       IntegerOperand b = (IntegerOperand) myRight;
-	       Expression expr1 = (Expression) myLeft;
-
-	       if(b.operand == 1) {
-		       return myLeft.simplify();
-		   }
-
-	       if(b.operand == 0) {
-		       return new IntegerOperand(0); // same but in reverse
+    * Lists the subtrees of this expression without recursing, so deep trees do not overflow
+    * the call stack. This is the one walk that the flattening and indexing classes share.
+    * @return every subtree, each operand before its operator and left operands before right ones
+    */
+   List<Expression> subtrees() {
+       ArrayList<Expression> result = new ArrayList<Expression>(size());
+       Stack<Expression> pending = new Stack<Expression>();
+       pending.push(this);
+       while(!pending.empty()) {
+	       Expression e = pending.pop();
+	       result.add(e);  // parents first, right before left; reversed below
+	       if(e instanceof OperatorExpression) {
+		       pending.push(((OperatorExpression) e).left);
+		       pending.push(((OperatorExpression) e).right);
 		   }
 	   }
-
-       return new ProductExpression(myLeft.simplify(), myRight.simplify());
-   }   
-
-   /**
-    * Evaluates the expression given assignments of values to variables
-    * @param assignments a HashMap from Strings (variable names) to Integers (values)
-    * @return the result of evaluating the expression with the given variable assignments
-    */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return this.left.evaluate(assignments) * this.right.evaluate(assignments);
+       Collections.reverse(result);
+       return result;
    }
 
    /**
-    * @return a Set of the variables contained in this expression
+    * Mixes the bits of a 64-bit value (the finalizer of MurmurHash3)
+    * @param h a value
+    * @return the mixed value
     */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       vars.addAll(this.left.getVariables());
-       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
-       return vars;
+   static long mix(long h) {
+       h ^= h >>> 33;
+       h *= 0xff51afd7ed558ccdL;
+       h ^= h >>> 33;
+       h *= 0xc4ceb9fe1a85ec53L;
+       h ^= h >>> 33;
+       return h;
    }
 
-   /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
-    */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || (!(obj instanceof ProductExpression)))
-           return false;
-      
-       ProductExpression sum = (ProductExpression) obj;
-
-       //check if ALL are equal
-       return this.left.equals(sum.left) && this.right.equals(sum.right) || sum.left.equals(this.left) && sum.right.equals(this.right);
-   }
-}
 
 
 
 
-/**
- * A class representing an expression involving a division
- */
-class QuotientExpression extends OperatorExpression {
-
    /**
-    * Create the expression
-    * @param left the expression representing the left operand
-    * @param right the expression representing the right operand
-    */
-   public QuotientExpression(Expression left, Expression right)
-   {
-      super(left, right);
-   }
-
-   /**
-    * @return a string representing the operand
+    * Prints the expression as a tree in DOT format for visualization
+    * @param filename the name of the output file
     */
-   protected String getOperator()
-   {
-      return "/";
-   }
-
-   /**
-    * @return a String that represents this expression in prefix notation.
-    */   
-   public String toPrefix()
-   {
-       return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
-   }
-
-   /**
-    * @return a String that represents this expression in postfix notation.
-    */  
-   public String toPostfix()
-   {
-       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
-   }   
+   public void drawExpression(String filename) throws IOException {
 
-   /**
-    * @return a String that represents the expression in infix notation
-    */
-   public String toInfix()
-   {
-       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
+      BufferedWriter bw = null;
+      FileWriter fw = new FileWriter(filename);
+      bw = new BufferedWriter(fw);
+      
+      bw.write("graph Expression {\n");
+      
+      drawExprHelper(bw);
+      
+      bw.write("}\n");
+      
+      bw.close();
+      fw.close();     
    }
 
    /**
-    * @return a new Expression mathematically equivalent to this one, but simplified.
+    * Recursively prints the vertices and edges of the expression tree for visualization
+    * @param bw the BufferedWriter to write to
     */
-
-   public Expression simplify() {
-       Expression myLeft = left.simplify();
-       Expression myRight = right.simplify();
-
-       if(left instanceof IntegerOperand && right instanceof IntegerOperand) {
-	       IntegerOperand op1 = (IntegerOperand) left;
-	       IntegerOperand op2 = (IntegerOperand) right;
-	       
-	       return new IntegerOperand(op1.operand / op2.operand);
-	   }
-
-       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
-	       IntegerOperand a = (IntegerOperand) myLeft;
-	       Expression expr = (Expression) myRight;
-
-	       if(a.operand == 0) {
-		       return new IntegerOperand(0); // if left is 0 return 0
-		   }
-	   }
-
-       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
-	       IntegerOperand b = (IntegerOperand) myRight;
-	       Expression expr1 = (Expression) myLeft;
-
-	       if(b.operand == 1) {
-		       return myLeft.simplify(); // if right is 1 call recursively 
-		   }
-	   }
-       
-       else if(left instanceof VariableOperand && right instanceof VariableOperand) {
-	       VariableOperand var1 = (VariableOperand) myLeft;
-	       VariableOperand var2 = (VariableOperand) myRight;
-	       
-	       if(var1.equals(var2)) {
-		       return new IntegerOperand(1); // if both are same (even if variables) return 1
-		   }
-	   }
-       return new QuotientExpression(myLeft.simplify(), myRight.simplify());
-   }   
+    protected abstract void drawExprHelper(BufferedWriter bw) throws IOException;
     
-   /**
-    * Evaluates the expression given assignments of values to variables.
-    * @param assignments a HashMap from Strings (variable names) to Integers (values).
-    * @return the result of evaluating the expression with the given variable assignments
-    */
-   public int evaluate(HashMap<String, Integer> assignments) {
-       return this.left.evaluate(assignments) / this.right.evaluate(assignments);
-   }
+    //Helper method to make appropriate expressions
+    public static Expression makeExpression(Expression var1, Expression var2, String op) {
+	    Expression exp = null;
 
-   /**
-    * @return a Set of the variables contained in this expression
-    */
-   public Set<String> getVariables() {
-       TreeSet<String> vars = new TreeSet<String>();
-       vars.addAll(this.left.getVariables());
-       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
-       return vars;
-   }
+	    if(op.equals("+")) {
+		    exp = new SumExpression(var1, var2); // instead of evaluating, make a new expression
+	    }
 
-   /**
-    * @param obj and Object to compare to
-    * @return true if obj is an IntegerOperand with the same associated value
-    */
-   @Override
-   public boolean equals(Object obj) {
-       if(obj == null || (!(obj instanceof QuotientExpression)))
-           return false;
-      
-       QuotientExpression sum = (QuotientExpression) obj;
+	    if(op.equals("-")) {
+		    exp = new DifferenceExpression(var1,var2);
+	    }
 
-       // same as difference Expression
-       return this.left.equals(sum.left) && this.right.equals(sum.right);
-   }
+	    if(op.equals("*")) {
+		    exp = new ProductExpression(var1, var2);
+	    }
+
+	    if(op.equals("/")) {
+		    exp = new QuotientExpression(var1, var2);
+	    }
+   
+	    return exp;
+    }
+   
 }
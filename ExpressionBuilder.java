@@ -0,0 +1,188 @@
+package com.maxim;
+
+import java.util.Stack;
+
+/**
+ * Builds an Expression one token at a time, for input that arrives incrementally.
+ * Operators are combined into subtrees as soon as precedence allows, so only the
+ * pending operands and operators are kept rather than the whole token array,
+ * and malformed input is reported by the token that makes it malformed.
+ *
+ * A builder is not thread-safe; use one per input stream.
+ */
+public class ExpressionBuilder {
+
+   private final boolean infix;
+   private final Stack<String> yardStack = new Stack<String>();
+   private final Stack<Expression> stack = new Stack<Expression>();
+   private boolean expectOperand = true;
+
+   private ExpressionBuilder(boolean infix) {
+      this.infix = infix;
+   }
+
+   /**
+    * @return a builder for an expression in infix notation
+    */
+   public static ExpressionBuilder infix() {
+      return new ExpressionBuilder(true);
+   }
+
+   /**
+    * @return a builder for an expression in postfix notation
+    */
+   public static ExpressionBuilder postfix() {
+      return new ExpressionBuilder(false);
+   }
+
+   /**
+    * Adds the next token of the expression
+    * @param token a single operand, operator or parenthesis
+    * @throws IllegalArgumentException if the token cannot continue the expression read so far;
+    *         the partial expression is discarded
+    */
+   public void accept(String token) {
+      try {
+         acceptToken(token);
+      } catch(IllegalArgumentException e) {
+         reset();
+         throw e;
+      }
+   }
+
+   private void acceptToken(String token) {
+      if(token.isEmpty()) {
+         throw new IllegalArgumentException("empty token");
+      }
+
+      if(isOperator(token)) {
+         if(infix) {
+            acceptInfixOperator(token);
+         } else {
+            if(stack.size() < 2) {
+               throw new IllegalArgumentException("operator " + token + " is missing an operand");
+            }
+            reduce(token);
+         }
+      }
+
+      else if(infix && token.equals("(")) {
+         if(!expectOperand) {
+            throw new IllegalArgumentException("( where an operator was expected");
+         }
+         yardStack.push(token);
+      }
+
+      else if(infix && token.equals(")")) {
+         if(expectOperand) {
+            throw new IllegalArgumentException(") where an operand was expected");
+         }
+         while(!yardStack.empty() && !yardStack.peek().equals("(")) {
+            reduce(yardStack.pop());
+         }
+         if(yardStack.empty()) {
+            throw new IllegalArgumentException("unbalanced )");
+         }
+         yardStack.pop();
+      }
+
+      else {
+         if(infix && !expectOperand) {
+            throw new IllegalArgumentException("operand " + token + " where an operator was expected");
+         }
+         stack.push(operand(token));
+         expectOperand = false;
+      }
+   }
+
+   /**
+    * Completes the expression and resets the builder so it can read another one
+    * @return the Expression built from every token accepted since the last call
+    * @throws IllegalArgumentException if the tokens do not form a complete expression
+    */
+   public Expression finish() {
+      try {
+         if(infix) {
+            if(expectOperand) {
+               throw new IllegalArgumentException("expression is incomplete");
+            }
+            while(!yardStack.empty()) {
+               String op = yardStack.pop();
+               if(op.equals("(")) {
+                  throw new IllegalArgumentException("unbalanced (");
+               }
+               reduce(op);
+            }
+         }
+         if(stack.size() != 1) {
+            throw new IllegalArgumentException(stack.empty() ? "expression is empty" : "operands are missing an operator");
+         }
+         return stack.pop();
+      } finally {
+         reset();
+      }
+   }
+
+   /**
+    * Discards the partial expression
+    */
+   private void reset() {
+      yardStack.clear();
+      stack.clear();
+      expectOperand = true;
+   }
+
+   /**
+    * Performs the shunting-yard step for an infix operator
+    * @param op the operator
+    */
+   private void acceptInfixOperator(String op) {
+      if(expectOperand) {
+         throw new IllegalArgumentException("operator " + op + " where an operand was expected");
+      }
+      while(!yardStack.empty() && precedence(yardStack.peek()) >= precedence(op)) {
+         reduce(yardStack.pop());
+      }
+      yardStack.push(op);
+      expectOperand = true;
+   }
+
+   /**
+    * Replaces the top two operands by the expression applying op to them
+    * @param op the operator
+    */
+   private void reduce(String op) {
+      Expression var1 = stack.pop();
+      Expression var2 = stack.pop();
+      stack.push(Expression.makeExpression(var2, var1, op));
+   }
+
+   /**
+    * @param token an operand token, which is a variable name or an integer such as 4 or -4
+    * @return the operand it represents
+    */
+   private static Expression operand(String token) {
+      if(Character.isLetter(token.charAt(0))) {
+         return new VariableOperand(token);
+      }
+      try {
+         return new IntegerOperand(Integer.parseInt(token));
+      } catch(NumberFormatException e) {
+         throw new IllegalArgumentException("unknown token " + token);
+      }
+   }
+
+   private static boolean isOperator(String token) {
+      return token.equals("+") || token.equals("-") || token.equals("*") || token.equals("/");
+   }
+
+   private static int precedence(String op) {
+      if(op.equals("*") || op.equals("/")) {
+         return 3;
+      }
+      if(op.equals("+") || op.equals("-")) {
+         return 2;
+      }
+      return 1; // (
+   }
+}
@@ -0,0 +1,217 @@
+package com.maxim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compiles an expression to JVM bytecode: a hidden class whose applyAsInt evaluates the
+ * expression in straight-line code, reading the variables from an int[] in the order of
+ * the given variables array.
+ *
+ * HotSpot does not JIT methods above 8000 bytes of bytecode, so only expressions up to
+ * MAX_NODES nodes are compiled.
+ */
+class ExpressionCompiler {
+
+   /**
+    * The largest expression, in nodes, that can be compiled
+    */
+   static final int MAX_NODES = 1000;
+
+   private static final String CLASS_NAME = "com/maxim/CompiledExpression";
+
+   private final String[] variables;
+   private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+   private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+   private final DataOutputStream poolOut = new DataOutputStream(pool);
+   private final HashMap<Integer, Integer> integerConstants = new HashMap<Integer, Integer>();
+   private int poolCount = 1;
+
+   private ExpressionCompiler(String[] variables) {
+      this.variables = variables;
+   }
+
+   /**
+    * @param expr an expression of at most MAX_NODES nodes
+    * @param variables the variables of expr, sorted as getVariables() returns them
+    * @return a function evaluating expr given the values of the variables
+    */
+   @SuppressWarnings("unchecked")
+   static ToIntFunction<int[]> compile(Expression expr, String[] variables) {
+      if(expr.size() > MAX_NODES) {
+         throw new IllegalArgumentException("expression has more than " + MAX_NODES + " nodes");
+      }
+      try {
+         byte[] bytes = new ExpressionCompiler(variables).classFile(expr);
+         MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+         return (ToIntFunction<int[]>) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+      } catch(Throwable t) {
+         throw new IllegalStateException("could not compile " + expr, t);
+      }
+   }
+
+   /**
+    * @return the class file of a final class implementing ToIntFunction<int[]> for expr
+    */
+   private byte[] classFile(Expression expr) throws IOException {
+      int thisClass = classEntry(CLASS_NAME);
+      int object = classEntry("java/lang/Object");
+      int function = classEntry("java/util/function/ToIntFunction");
+      int intArray = classEntry("[I");
+      int init = utf8("<init>");
+      int voidDescriptor = utf8("()V");
+      int superInit = entry(10, object, entry(12, init, voidDescriptor)); // Methodref, NameAndType
+      int apply = utf8("applyAsInt");
+      int applyDescriptor = utf8("(Ljava/lang/Object;)I");
+      int codeName = utf8("Code");
+
+      // applyAsInt: v = (int[]) arg; return <expr>;
+      code.write(0x2b);                      // aload_1
+      code.write(0xc0);                      // checkcast int[]
+      writeShort(code, intArray);
+      code.write(0x4c);                      // astore_1
+      emit(expr);
+      code.write(0xac);                      // ireturn
+      byte[] body = code.toByteArray();
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xcafebabe);
+      out.writeShort(0);
+      out.writeShort(52);                    // Java 8 format, no stack maps needed without branches
+      out.writeShort(poolCount);
+      out.write(pool.toByteArray());
+      out.writeShort(0x0031);                // public final super
+      out.writeShort(thisClass);
+      out.writeShort(object);
+      out.writeShort(1);
+      out.writeShort(function);
+      out.writeShort(0);                     // no fields
+      out.writeShort(2);
+
+      out.writeShort(0x0001);                // public <init>() { super(); }
+      out.writeShort(init);
+      out.writeShort(voidDescriptor);
+      writeCode(out, codeName, 1, 1, new byte[] {0x2a, (byte) 0xb7, (byte) (superInit >> 8), (byte) superInit, (byte) 0xb1});
+
+      out.writeShort(0x0001);                // public int applyAsInt(Object)
+      out.writeShort(apply);
+      out.writeShort(applyDescriptor);
+      writeCode(out, codeName, Math.max(1, maxStack(expr)), 2, body);
+
+      out.writeShort(0);                     // no class attributes
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Appends the post-order bytecode leaving the value of e on the operand stack
+    */
+   private void emit(Expression e) {
+      if(e instanceof IntegerOperand) {
+         pushInt(((IntegerOperand) e).operand);
+      }
+      else if(e instanceof VariableOperand) {
+         code.write(0x2b);                   // aload_1
+         pushInt(Arrays.binarySearch(variables, ((VariableOperand) e).variable));
+         code.write(0x2e);                   // iaload
+      }
+      else {
+         OperatorExpression o = (OperatorExpression) e;
+         emit(o.left);
+         emit(o.right);
+         switch(o.getOperator()) {
+            case "+": code.write(0x60); break;  // iadd
+            case "-": code.write(0x64); break;  // isub
+            case "*": code.write(0x68); break;  // imul
+            default: code.write(0x6c); break;   // idiv
+         }
+      }
+   }
+
+   private void pushInt(int value) {
+      if(value >= -1 && value <= 5) {
+         code.write(0x03 + value);           // iconst_<value>
+      } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+         code.write(0x10);                   // bipush
+         code.write(value);
+      } else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+         code.write(0x11);                   // sipush
+         writeShort(code, value);
+      } else {
+         code.write(0x13);                   // ldc_w
+         writeShort(code, integerEntry(value));
+      }
+   }
+
+   /**
+    * @return the operand stack depth needed to evaluate e
+    */
+   private static int maxStack(Expression e) {
+      if(e instanceof IntegerOperand) {
+         return 1;
+      }
+      if(e instanceof VariableOperand) {
+         return 2;                           // the array and the index
+      }
+      OperatorExpression o = (OperatorExpression) e;
+      return Math.max(maxStack(o.left), 1 + maxStack(o.right));
+   }
+
+   private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] body) throws IOException {
+      out.writeShort(1);
+      out.writeShort(codeName);
+      out.writeInt(12 + body.length);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(body.length);
+      out.write(body);
+      out.writeShort(0);                     // no exception handlers
+      out.writeShort(0);                     // no code attributes
+   }
+
+   private static void writeShort(ByteArrayOutputStream out, int value) {
+      out.write(value >> 8);
+      out.write(value);
+   }
+
+   private int utf8(String s) throws IOException {
+      poolOut.writeByte(1);
+      poolOut.writeUTF(s);
+      return poolCount++;
+   }
+
+   private int classEntry(String name) throws IOException {
+      int n = utf8(name);
+      poolOut.writeByte(7);
+      poolOut.writeShort(n);
+      return poolCount++;
+   }
+
+   private int entry(int tag, int first, int second) throws IOException {
+      poolOut.writeByte(tag);
+      poolOut.writeShort(first);
+      poolOut.writeShort(second);
+      return poolCount++;
+   }
+
+   private int integerEntry(int value) {
+      Integer n = integerConstants.get(value);
+      if(n == null) {
+         try {
+            poolOut.writeByte(3);
+            poolOut.writeInt(value);
+         } catch(IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory stream
+         }
+         n = poolCount++;
+         integerConstants.put(value, n);
+      }
+      return n;
+   }
+}
@@ -0,0 +1,294 @@
+package com.maxim;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * An inverted index over a catalog of formulas, answering which formulas use a variable
+ * or contain a given subterm without scanning the whole catalog.
+ *
+ * Each formula gets an id when it is added. The index keeps a posting list of ids for
+ * every variable name and for every subtree fingerprint; the lists are stored sorted,
+ * delta and varint encoded in byte arrays. Subterm lookups check the candidates found
+ * by fingerprint with equals, walking only the subtrees large enough to match, so
+ * fingerprint collisions never produce wrong answers.
+ *
+ * Ids are never reused, so removing a formula leaves its id in the posting lists as a
+ * tombstone that lookups skip. A list is re-encoded without its tombstones once they
+ * outnumber its live ids, so removal costs amortized O(1) per posting.
+ *
+ * A FormulaIndex is not thread-safe.
+ */
+public class FormulaIndex {
+
+   private final HashMap<Integer, Expression> formulas = new HashMap<Integer, Expression>();
+   private final HashMap<String, Postings> byVariable = new HashMap<String, Postings>();
+   private final HashMap<Long, Postings> bySubtree = new HashMap<Long, Postings>();
+   private int nextId;
+
+   /**
+    * Adds a formula to the index
+    * @param formula the formula
+    * @return the id of the formula
+    */
+   public int add(Expression formula) {
+      int id = nextId++;
+      formulas.put(id, formula);
+
+      for(String v : formula.getVariables()) {
+         Postings p = byVariable.get(v);
+         if(p == null) {
+            p = new Postings();
+            byVariable.put(v, p);
+         }
+         p.append(id);
+      }
+      for(long f : subtreeFingerprints(formula)) {
+         Postings p = bySubtree.get(f);
+         if(p == null) {
+            p = new Postings();
+            bySubtree.put(f, p);
+         }
+         p.append(id);  // ids only grow, so appending keeps every list sorted
+      }
+      return id;
+   }
+
+   /**
+    * Removes a formula from the index
+    * @param id the id of the formula
+    * @return true if the formula was in the index
+    */
+   public boolean remove(int id) {
+      Expression formula = formulas.remove(id);
+      if(formula == null) {
+         return false;
+      }
+
+      for(String v : formula.getVariables()) {
+         if(removeFrom(byVariable.get(v))) {
+            byVariable.remove(v);
+         }
+      }
+      for(long f : subtreeFingerprints(formula)) {
+         if(removeFrom(bySubtree.get(f))) {
+            bySubtree.remove(f);
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Counts a just removed formula out of a posting list, compacting the list if its
+    * tombstones outnumber its live ids
+    * @param p the posting list of a key the removed formula had
+    * @return true if no live ids are left, so the list can be dropped
+    */
+   private boolean removeFrom(Postings p) {
+      p.markRemoved();
+      if(p.size() == 0) {
+         return true;
+      }
+      if(p.removed() > p.size()) {
+         p.compact(formulas);
+      }
+      return false;
+   }
+
+   /**
+    * @param p a posting list
+    * @return its ids that are not tombstones, in ascending order
+    */
+   private int[] live(Postings p) {
+      int[] ids = p.toArray();
+      int n = 0;
+      for(int id : ids) {
+         if(formulas.containsKey(id)) {
+            ids[n++] = id;
+         }
+      }
+      return Arrays.copyOf(ids, n);
+   }
+
+   /**
+    * @param id the id of a formula
+    * @return the formula, or null if there is no formula with that id
+    */
+   public Expression get(int id) {
+      return formulas.get(id);
+   }
+
+   /**
+    * @return the number of formulas in the index
+    */
+   public int size() {
+      return formulas.size();
+   }
+
+   /**
+    * @param variable a variable name
+    * @return the ids of the formulas using the variable, in ascending order
+    */
+   public int[] formulasUsing(String variable) {
+      Postings p = byVariable.get(variable);
+      return p == null ? new int[0] : live(p);
+   }
+
+   /**
+    * @param subterm an expression
+    * @return the ids of the formulas containing a subtree equal to subterm, in ascending order
+    */
+   public int[] formulasContaining(Expression subterm) {
+      Postings p = bySubtree.get(subterm.fingerprint());
+      if(p == null) {
+         return new int[0];
+      }
+
+      int[] candidates = live(p);
+      int n = 0;
+      for(int id : candidates) {
+         if(contains(formulas.get(id), subterm)) {
+            candidates[n++] = id;
+         }
+      }
+      return Arrays.copyOf(candidates, n);
+   }
+
+   /**
+    * @param formula an expression
+    * @return the distinct fingerprints of all its subtrees
+    */
+   private static HashSet<Long> subtreeFingerprints(Expression formula) {
+      HashSet<Long> fingerprints = new HashSet<Long>();
+      for(Expression e : formula.subtrees()) {
+         fingerprints.add(e.fingerprint());
+      }
+      return fingerprints;
+   }
+
+   /**
+    * @param formula an expression
+    * @param subterm an expression
+    * @return true if formula has a subtree equal to subterm
+    */
+   private static boolean contains(Expression formula, Expression subterm) {
+      long f = subterm.fingerprint();
+      int size = subterm.size();
+      Stack<Expression> nodes = new Stack<Expression>();
+      nodes.push(formula);
+
+      while(!nodes.empty()) {
+         Expression e = nodes.pop();
+         if(e.size() == size) {
+            if(e.fingerprint() == f && e.equals(subterm)) {
+               return true;
+            }
+         }
+         else if(e instanceof OperatorExpression) {
+            // operands are smaller than their operator, so only larger subtrees can hold a match
+            OperatorExpression o = (OperatorExpression) e;
+            if(o.left.size() >= size) {
+               nodes.push(o.left);
+            }
+            if(o.right.size() >= size) {
+               nodes.push(o.right);
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * A sorted list of ids, stored as varint encoded gaps between consecutive ids
+    */
+   static class Postings {
+      private byte[] bytes = new byte[4];
+      private int length;
+      private int count;
+      private int removed;
+      private int last = -1;
+
+      /**
+       * @param id an id greater than every id in the list
+       */
+      void append(int id) {
+         int gap = id - last;
+         last = id;
+         count++;
+
+         if(length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+         }
+         while((gap & ~0x7f) != 0) {
+            bytes[length++] = (byte) ((gap & 0x7f) | 0x80);
+            gap >>>= 7;
+         }
+         bytes[length++] = (byte) gap;
+      }
+
+      /**
+       * Counts one id of the list as a tombstone, without re-encoding it
+       */
+      void markRemoved() {
+         removed++;
+      }
+
+      /**
+       * Re-encodes the list without its tombstones
+       * @param live the formulas still in the index, by id
+       */
+      void compact(Map<Integer, ?> live) {
+         int[] ids = toArray();
+         length = 0;
+         count = 0;
+         removed = 0;
+         last = -1;
+         for(int id : ids) {
+            if(live.containsKey(id)) {
+               append(id);
+            }
+         }
+      }
+
+      /**
+       * @return the number of live ids in the list
+       */
+      int size() {
+         return count - removed;
+      }
+
+      /**
+       * @return the number of tombstones in the list
+       */
+      int removed() {
+         return removed;
+      }
+
+      /**
+       * @return the ids in ascending order, tombstones included
+       */
+      int[] toArray() {
+         int[] ids = new int[count];
+         int pos = 0;
+         int id = -1;
+
+         for(int i = 0; i < count; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+               b = bytes[pos++];
+               gap |= (b & 0x7f) << shift;
+               shift += 7;
+            } while(b < 0);
+
+            id += gap;
+            ids[i] = id;
+         }
+         return ids;
+      }
+   }
+}
@@ -0,0 +1,250 @@
+package com.maxim;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Stack;
+import java.util.TreeSet;
+
+/**
+ * A group of formulas evaluated together against one variable assignment.
+ *
+ * The formulas are merged into a single DAG in which every distinct subterm appears once
+ * (operands of + and * are put in a canonical order, so x*y and y*x are shared too). The
+ * DAG is stored as a flat schedule in evaluation order, so evaluating the set looks up each
+ * variable once and computes each common subterm once for all formulas. When every
+ * formula can be evaluated, the results are identical to calling evaluate on each one.
+ * The set is evaluated as a whole, though: if any formula divides by zero, or uses a
+ * variable missing from the assignments, the whole evaluation throws and no formula
+ * gets a result. Formulas that may fail separately should go in separate sets.
+ *
+ * A FormulaSet is immutable and may be evaluated from several threads at once.
+ */
+public class FormulaSet {
+
+   private final String[] variables;
+   private final char[] op;       // 'c' constant, 'v' variable, or the operator
+   private final int[] a;         // constant value, variable slot, or left operand index
+   private final int[] b;         // right operand index
+   private final int[] roots;     // the node computing each formula
+
+   /**
+    * Create the set
+    * @param formulas the formulas, in the order their results are returned
+    */
+   public FormulaSet(Expression... formulas) {
+      this(Arrays.asList(formulas));
+   }
+
+   /**
+    * Create the set
+    * @param formulas the formulas, in the order their results are returned
+    */
+   public FormulaSet(List<? extends Expression> formulas) {
+      TreeSet<String> names = new TreeSet<String>();
+      for(Expression f : formulas) {
+         names.addAll(f.getVariables());
+      }
+      variables = names.toArray(new String[0]);
+
+      Builder builder = new Builder(variables);
+      roots = new int[formulas.size()];
+      for(int i = 0; i < roots.length; i++) {
+         roots[i] = builder.add(formulas.get(i));
+      }
+
+      op = Arrays.copyOf(builder.op, builder.size);
+      a = Arrays.copyOf(builder.a, builder.size);
+      b = Arrays.copyOf(builder.b, builder.size);
+   }
+
+   /**
+    * @return the variables in the order used by evaluate(int[]), sorted like getVariables()
+    */
+   public String[] getVariables() {
+      return variables.clone();
+   }
+
+   /**
+    * @return the number of formulas in the set
+    */
+   public int size() {
+      return roots.length;
+   }
+
+   /**
+    * @return the number of distinct subterms shared by the formulas
+    */
+   public int nodeCount() {
+      return op.length;
+   }
+
+   /**
+    * Evaluates every formula given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of each formula, in the order the formulas were given
+    * @throws ArithmeticException if any formula divides by zero
+    */
+   public int[] evaluate(HashMap<String, Integer> assignments) {
+      int[] values = new int[variables.length];
+      for(int i = 0; i < variables.length; i++) {
+         values[i] = assignments.get(variables[i]);
+      }
+      return evaluate(values);
+   }
+
+   /**
+    * Evaluates every formula given the values of the variables
+    * @param values the value of each variable, in getVariables() order
+    * @return the result of each formula, in the order the formulas were given
+    * @throws ArithmeticException if any formula divides by zero
+    */
+   public int[] evaluate(int[] values) {
+      int[] results = new int[roots.length];
+      evaluate(values, 0, new int[op.length], results, 0);
+      return results;
+   }
+
+   /**
+    * Evaluates every formula without allocating, for callers that reuse their buffers
+    * @param values holds the value of each variable, in getVariables() order
+    * @param valuesOffset the index in values of the first variable
+    * @param work scratch space of at least nodeCount() elements
+    * @param results receives the result of each formula
+    * @param resultsOffset the index in results of the first formula
+    * @throws ArithmeticException if any formula divides by zero, leaving results unchanged
+    */
+   public void evaluate(int[] values, int valuesOffset, int[] work, int[] results, int resultsOffset) {
+      for(int i = 0; i < op.length; i++) {
+         switch(op[i]) {
+            case 'c': work[i] = a[i]; break;
+            case 'v': work[i] = values[valuesOffset + a[i]]; break;
+            case '+': work[i] = work[a[i]] + work[b[i]]; break;
+            case '-': work[i] = work[a[i]] - work[b[i]]; break;
+            case '*': work[i] = work[a[i]] * work[b[i]]; break;
+            default: work[i] = work[a[i]] / work[b[i]]; break;
+         }
+      }
+      for(int i = 0; i < roots.length; i++) {
+         results[resultsOffset + i] = work[roots[i]];
+      }
+   }
+
+   /**
+    * @param node the index of a node, from 0 to nodeCount() - 1; operands come before their operators
+    * @return 'c' for a constant, 'v' for a variable, or the operator of the node
+    */
+   char operator(int node) {
+      return op[node];
+   }
+
+   /**
+    * @param node the index of a node
+    * @return the value of a constant, the getVariables() index of a variable, or the index of a left operand
+    */
+   int left(int node) {
+      return a[node];
+   }
+
+   /**
+    * @param node the index of an operator node
+    * @return the index of its right operand
+    */
+   int right(int node) {
+      return b[node];
+   }
+
+   /**
+    * @param formula the index of a formula, in the order the formulas were given
+    * @return the index of the node computing it
+    */
+   int root(int formula) {
+      return roots[formula];
+   }
+
+   /**
+    * Interns the nodes of the formulas, handing out ids in evaluation order
+    */
+   private static class Builder {
+      char[] op = new char[16];
+      int[] a = new int[16];
+      int[] b = new int[16];
+      int size;
+
+      final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+      final HashMap<String, Integer> variableNodes = new HashMap<String, Integer>();
+      final HashMap<Integer, Integer> constantNodes = new HashMap<Integer, Integer>();
+      final HashMap<Character, HashMap<Long, Integer>> operatorNodes = new HashMap<Character, HashMap<Long, Integer>>();
+
+      Builder(String[] variables) {
+         for(int i = 0; i < variables.length; i++) {
+            slots.put(variables[i], i);
+         }
+         for(char c : new char[] {'+', '-', '*', '/'}) {
+            operatorNodes.put(c, new HashMap<Long, Integer>());
+         }
+      }
+
+      /**
+       * @param expr a formula
+       * @return the id of the node computing it
+       */
+      int add(Expression expr) {
+         Stack<Integer> done = new Stack<Integer>();
+
+         for(Expression e : expr.subtrees()) {
+            if(e instanceof IntegerOperand) {
+               int value = ((IntegerOperand) e).operand;
+               Integer id = constantNodes.get(value);
+               if(id == null) {
+                  id = append('c', value, 0);
+                  constantNodes.put(value, id);
+               }
+               done.push(id);
+            }
+            else if(e instanceof VariableOperand) {
+               String name = ((VariableOperand) e).variable;
+               Integer id = variableNodes.get(name);
+               if(id == null) {
+                  id = append('v', slots.get(name), 0);
+                  variableNodes.put(name, id);
+               }
+               done.push(id);
+            }
+            else {
+               char c = ((OperatorExpression) e).getOperator().charAt(0);
+               int right = done.pop();
+               int left = done.pop();
+
+               if((c == '+' || c == '*') && right < left) {
+                  int t = left;  // int + and * commute exactly, so share both orders
+                  left = right;
+                  right = t;
+               }
+
+               long key = ((long) left << 32) | (right & 0xffffffffL);
+               HashMap<Long, Integer> nodesOfOperator = operatorNodes.get(c);
+               Integer id = nodesOfOperator.get(key);
+               if(id == null) {
+                  id = append(c, left, right);
+                  nodesOfOperator.put(key, id);
+               }
+               done.push(id);
+            }
+         }
+         return done.pop();
+      }
+
+      private int append(char c, int left, int right) {
+         if(size == op.length) {
+            op = Arrays.copyOf(op, size * 2);
+            a = Arrays.copyOf(a, size * 2);
+            b = Arrays.copyOf(b, size * 2);
+         }
+         op[size] = c;
+         a[size] = left;
+         b[size] = right;
+         return size++;
+      }
+   }
+}
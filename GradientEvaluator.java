@@ -0,0 +1,107 @@
+package com.maxim;
+
+import java.util.Arrays;
+
+/**
+ * Computes an expression's value together with its partial derivatives with respect to
+ * every variable, using reverse-mode automatic differentiation.
+ *
+ * The tree is flattened once into a tape in evaluation order, the schedule of a FormulaSet,
+ * so repeated subterms are computed once and their derivatives accumulate from every use.
+ * Each call runs one forward pass over the tape to compute the node values and one reverse
+ * pass to accumulate the derivatives, so all partial derivatives cost O(nodes) together.
+ * The expression is treated as a function of real numbers: a quotient is differentiated as
+ * real division, since integer division is flat almost everywhere.
+ *
+ * The scratch arrays are reused between calls, so an evaluator must not be shared between
+ * threads.
+ */
+public class GradientEvaluator {
+
+   private final String[] variables;
+   private final char[] op;       // 'c' constant, 'v' variable, or the operator
+   private final int[] a;         // left operand index, or variable slot
+   private final int[] b;         // right operand index
+   private final double[] value;
+   private final double[] adjoint;
+   private final int root;
+
+   /**
+    * Create the evaluator
+    * @param expr the expression to differentiate
+    */
+   public GradientEvaluator(Expression expr) {
+      FormulaSet tape = new FormulaSet(expr);
+      variables = tape.getVariables();
+
+      int n = tape.nodeCount();
+      op = new char[n];
+      a = new int[n];
+      b = new int[n];
+      value = new double[n];
+      adjoint = new double[n];
+      root = tape.root(0);
+
+      for(int i = 0; i < n; i++) {
+         op[i] = tape.operator(i);
+         if(op[i] == 'c') {
+            value[i] = tape.left(i);
+         } else {
+            a[i] = tape.left(i);
+            b[i] = tape.right(i);
+         }
+      }
+   }
+
+   /**
+    * @return the variables in the order used for points and gradients, as given by getVariables()
+    */
+   public String[] getVariables() {
+      return variables.clone();
+   }
+
+   /**
+    * Evaluates the expression and its gradient at a point
+    * @param point the value of each variable, in getVariables() order
+    * @param gradient receives the partial derivative for each variable, in getVariables() order
+    * @return the value of the expression at the point
+    */
+   public double evaluate(double[] point, double[] gradient) {
+      int n = op.length;
+
+      for(int i = 0; i < n; i++) {
+         switch(op[i]) {
+            case 'v': value[i] = point[a[i]]; break;
+            case '+': value[i] = value[a[i]] + value[b[i]]; break;
+            case '-': value[i] = value[a[i]] - value[b[i]]; break;
+            case '*': value[i] = value[a[i]] * value[b[i]]; break;
+            case '/': value[i] = value[a[i]] / value[b[i]]; break;
+            default: break; // constants are filled in once
+         }
+      }
+
+      Arrays.fill(adjoint, 0.0);
+      Arrays.fill(gradient, 0, variables.length, 0.0);
+      adjoint[root] = 1.0;
+
+      for(int i = root; i >= 0; i--) {
+         double d = adjoint[i];
+         switch(op[i]) {
+            case 'v': gradient[a[i]] += d; break;
+            case '+': adjoint[a[i]] += d; adjoint[b[i]] += d; break;
+            case '-': adjoint[a[i]] += d; adjoint[b[i]] -= d; break;
+            case '*':
+               adjoint[a[i]] += d * value[b[i]];
+               adjoint[b[i]] += d * value[a[i]];
+               break;
+            case '/':
+               adjoint[a[i]] += d / value[b[i]];
+               adjoint[b[i]] -= d * value[i] / value[b[i]];
+               break;
+            default: break;
+         }
+      }
+      return value[root];
+   }
+
+}
@@ -0,0 +1,161 @@
+package com.maxim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class representing an expression containing only a single integer value
+ */
+class IntegerOperand extends Operand {
+   protected final int operand;
+
+   /**
+    * Create the expression
+    * @param operand the integer value this expression represents
+    */
+   public IntegerOperand(int operand)
+   {
+      this.operand = operand;
+   }
+
+   /**
+    * @return a String that represents this expression in prefix notation
+    */   
+   public String toPrefix() {
+       return Integer.toString(operand);
+   }
+
+   /**
+    * @return a String that represents this expression in postfix notation
+    */  
+   public String toPostfix() {
+       return Integer.toString(operand);
+   }   
+
+   /**
+    * @return a String that represents the expression in infix notation
+    */
+   public String toInfix() {
+       return Integer.toString(operand);
+   }
+
+   /**
+    * @return a new Expression mathematically equivalent to this one, but simplified
+    */  
+   public Expression simplify() {
+       return new IntegerOperand(operand);
+   }   
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @param range receives the range of this expression in its first element
+    * @return a new Expression mathematically equivalent to this one, but simplified
+    */
+   protected Expression simplify(Map<String, Interval> bounds, Interval[] range) {
+       range[0] = Interval.constant(operand);
+       return simplify();
+   }
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @return the Interval containing only the integer value
+    */
+   public Interval range(Map<String, Interval> bounds) {
+       return Interval.constant(operand);
+   }
+
+   /**
+    * Evaluates the expression given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+       return operand;
+   }
+
+   /**
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the integer value
+    */
+   public int evaluateShortCircuit(HashMap<String, Integer> assignments) {
+       return operand;
+   }
+
+   /**
+    * @return the cost of reading a constant
+    */
+   public int cost() {
+       return 1;
+   }
+
+   /**
+    * @return 1, for the operand itself
+    */
+   public int size() {
+       return 1;
+   }
+
+   /**
+    * @return this operand, which has no chains to balance
+    */
+   public Expression rebalance() {
+       return this;
+   }
+
+   /**
+    * @param replacements a Map from Strings (variable names) to Expressions
+    * @return this operand, which contains no variables
+    */
+   public Expression substitute(Map<String, ? extends Expression> replacements) {
+       return this;
+   }
+
+   /**
+    * @return a Set of the variables contained in this expression
+    */
+   public Set<String> getVariables() {
+       TreeSet<String> vars = new TreeSet<String>();
+       return vars;
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an IntegerOperand with the same associated value
+    */
+   @Override
+   public boolean equals(Object obj) {
+       if(obj == null || !((obj) instanceof IntegerOperand)) { // if is an integer operand at all!
+	       return false;
+	   }
+       IntegerOperand op = (IntegerOperand) obj; // compare the integer values of the operands
+       
+       return op.operand == this.operand;
+   }   
+
+   /**
+    * @return a hash code of the integer value
+    */
+   @Override
+   public int hashCode() {
+       return Integer.hashCode(operand);
+   }
+
+   /**
+    * @return the fingerprint of the integer value
+    */
+   public long fingerprint() {
+       return mix(0x1f83d9abfb41bd6bL ^ operand);
+   }
+
+   /**
+    * Recursively prints the vertices and edges of the expression tree for visualization
+    * @param bw the BufferedWriter to write to
+    */
+   protected void drawExprHelper(BufferedWriter bw) throws IOException {
+      bw.write("\tnode"+System.identityHashCode(this)+"[label="+operand+"];\n");
+   }
+}
@@ -0,0 +1,152 @@
+package com.maxim;
+
+/**
+ * A range of int values an expression may take, used to reason about expressions whose
+ * variables have known bounds.
+ *
+ * An interval is safe when evaluating the expression it describes can neither overflow
+ * nor divide by zero, so the exact result is guaranteed to lie between lo and hi. An
+ * unsafe interval may wrap around and therefore covers every int.
+ */
+public final class Interval {
+
+   /**
+    * Every int, for a value nothing is known about
+    */
+   public static final Interval ALL = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+
+   /**
+    * Every int, for a value that may have overflowed or failed
+    */
+   private static final Interval UNSAFE = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+
+   private final int lo;
+   private final int hi;
+   private final boolean safe;
+
+   private Interval(int lo, int hi, boolean safe) {
+      this.lo = lo;
+      this.hi = hi;
+      this.safe = safe;
+   }
+
+   /**
+    * @param lo the smallest value
+    * @param hi the largest value
+    * @return the interval of values from lo to hi, inclusive
+    */
+   public static Interval of(int lo, int hi) {
+      if(lo > hi) {
+         throw new IllegalArgumentException("empty interval " + lo + ".." + hi);
+      }
+      return new Interval(lo, hi, true);
+   }
+
+   /**
+    * @param value an int
+    * @return the interval containing only value
+    */
+   public static Interval constant(int value) {
+      return new Interval(value, value, true);
+   }
+
+   /**
+    * @return the smallest value in the interval
+    */
+   public int lo() {
+      return lo;
+   }
+
+   /**
+    * @return the largest value in the interval
+    */
+   public int hi() {
+      return hi;
+   }
+
+   /**
+    * @return true if the value cannot overflow or divide by zero, so it lies between lo and hi
+    */
+   public boolean isSafe() {
+      return safe;
+   }
+
+   /**
+    * @return true if the value is safe and always the same
+    */
+   public boolean isConstant() {
+      return safe && lo == hi;
+   }
+
+   /**
+    * @return true if the value may be 0
+    */
+   public boolean containsZero() {
+      return lo <= 0 && hi >= 0;
+   }
+
+   /**
+    * @param other the right operand
+    * @return the interval of this + other
+    */
+   public Interval add(Interval other) {
+      return exact((long) lo + other.lo, (long) hi + other.hi, safe && other.safe);
+   }
+
+   /**
+    * @param other the right operand
+    * @return the interval of this - other
+    */
+   public Interval subtract(Interval other) {
+      return exact((long) lo - other.hi, (long) hi - other.lo, safe && other.safe);
+   }
+
+   /**
+    * @param other the right operand
+    * @return the interval of this * other
+    */
+   public Interval multiply(Interval other) {
+      long p1 = (long) lo * other.lo;
+      long p2 = (long) lo * other.hi;
+      long p3 = (long) hi * other.lo;
+      long p4 = (long) hi * other.hi;
+      return exact(Math.min(Math.min(p1, p2), Math.min(p3, p4)),
+                   Math.max(Math.max(p1, p2), Math.max(p3, p4)), safe && other.safe);
+   }
+
+   /**
+    * @param other the divisor
+    * @return the interval of this / other, which is unsafe if other may be 0
+    */
+   public Interval divide(Interval other) {
+      if(other.containsZero()) {
+         return UNSAFE;
+      }
+
+      // with a divisor of constant sign, truncating division is monotonic in each operand
+      long q1 = (long) lo / other.lo;
+      long q2 = (long) lo / other.hi;
+      long q3 = (long) hi / other.lo;
+      long q4 = (long) hi / other.hi;
+      return exact(Math.min(Math.min(q1, q2), Math.min(q3, q4)),
+                   Math.max(Math.max(q1, q2), Math.max(q3, q4)), safe && other.safe);
+   }
+
+   /**
+    * @return the interval from lo to hi if it fits in an int and safe holds, otherwise UNSAFE
+    */
+   private static Interval exact(long lo, long hi, boolean safe) {
+      if(!safe || lo < Integer.MIN_VALUE || hi > Integer.MAX_VALUE) {
+         return UNSAFE;
+      }
+      return new Interval((int) lo, (int) hi, true);
+   }
+
+   /**
+    * @return the interval as lo..hi
+    */
+   @Override
+   public String toString() {
+      return safe ? lo + ".." + hi : "unsafe";
+   }
+}
@@ -0,0 +1,107 @@
+package com.maxim;
+
+import java.util.Arrays;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A load generator for EvaluationServer, reporting throughput and latency percentiles.
+ *
+ * To run: java LoadGenerator port [connections] [requests per connection] [pipeline depth] [request]
+ */
+public class LoadGenerator {
+
+   public static void main(String[] args) throws Exception {
+      if(args.length < 1) {
+         System.out.println("Usage: LoadGenerator port [connections] [requests] [depth] [request]");
+         return;
+      }
+
+      int port = Integer.parseInt(args[0]);
+      int connections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+      int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+      int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+      String request = args.length > 4 ? args[4] : "EVAL infix y * ( 4 + x * 0 ) x=3 y=4";
+
+      long[][] latencies = new long[connections][];
+      Thread[] clients = new Thread[connections];
+
+      long start = System.nanoTime();
+      for(int c = 0; c < connections; c++) {
+         final int id = c;
+         clients[c] = new Thread(() -> {
+            try {
+               latencies[id] = run(port, request, requests, depth);
+            } catch(IOException e) {
+               throw new RuntimeException(e);
+            }
+         });
+         clients[c].start();
+      }
+      for(Thread t : clients) {
+         t.join();
+      }
+      long elapsed = System.nanoTime() - start;
+
+      long[] all = new long[connections * requests];
+      for(int c = 0; c < connections; c++) {
+         System.arraycopy(latencies[c], 0, all, c * requests, requests);
+      }
+      Arrays.sort(all);
+
+      System.out.printf("%d requests in %.2f s: %.0f requests/s%n", all.length, elapsed / 1e9, all.length / (elapsed / 1e9));
+      System.out.printf("latency p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                        percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3, all[all.length - 1] / 1e3);
+   }
+
+   /**
+    * Sends requests over one connection in pipelined windows
+    * @return the latency of every request in nanoseconds
+    */
+   private static long[] run(int port, String request, int requests, int depth) throws IOException {
+      long[] latency = new long[requests];
+
+      try(Socket socket = new Socket("127.0.0.1", port);
+          BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+          BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+         socket.setTcpNoDelay(true);
+         for(int sent = 0; sent < requests; sent += depth) {
+            int window = Math.min(depth, requests - sent);
+            long t0 = System.nanoTime();
+
+            for(int i = 0; i < window; i++) {
+               out.write(request);
+               out.write('\n');
+            }
+            out.flush();
+
+            for(int i = 0; i < window; i++) {
+               String response = in.readLine();
+               if(response == null || !response.startsWith("OK")) {
+                  throw new IOException("unexpected response: " + response);
+               }
+               latency[sent + i] = System.nanoTime() - t0;
+            }
+         }
+         out.write("QUIT\n");
+         out.flush();
+      }
+      return latency;
+   }
+
+   /**
+    * @param sorted latencies in ascending order
+    * @param p the percentile as a fraction
+    * @return the latency at the given percentile
+    */
+   private static long percentile(long[] sorted, double p) {
+      int i = (int) Math.ceil(p * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+   }
+}
@@ -0,0 +1,8 @@
+package com.maxim;
+
+/**
+ * A class representing an abstract operand
+ */
+abstract class Operand extends Expression
+{
+}
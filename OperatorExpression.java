@@ -0,0 +1,308 @@
+package com.maxim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+
+/**
+ * A class representing an expression involving an operator
+ */
+abstract class OperatorExpression extends Expression
+{
+   protected final Expression left;
+   protected final Expression right;
+   private final int cost;
+   private final int size;
+   private final long fingerprint;
+
+   /**
+    * Create the expression
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    */
+   public OperatorExpression(Expression left, Expression right) {
+      this.left = left;
+      this.right = right;
+
+      long total = 1L + left.cost() + right.cost();
+      this.cost = (int) Math.min(total, Integer.MAX_VALUE);
+      this.size = (int) Math.min(1L + left.size() + right.size(), Integer.MAX_VALUE);
+
+      // computed once from the children's cached fingerprints, so hashing a tree is O(1)
+      long h = mix(0x6a09e667f3bcc908L ^ getOperator().charAt(0));
+      h = mix(h ^ left.fingerprint());
+      this.fingerprint = mix(h + 0x9e3779b97f4a7c15L * right.fingerprint());
+   }
+
+   /**
+    * @return a structural hash code of the operator and both operands
+    */
+   @Override
+   public int hashCode() {
+      return (int) (fingerprint ^ (fingerprint >>> 32));
+   }
+
+   /**
+    * @return the fingerprint of the operator and both operands
+    */
+   public long fingerprint() {
+      return fingerprint;
+   }
+
+   /**
+    * @param cache the simplified results of earlier calls
+    * @return the same result as simplify(), from the cache if this subtree was simplified before
+    */
+   public Expression simplify(SimplifyCache cache) {
+      Expression result = cache.get(this);
+      if(result == null) {
+         result = simplify(left.simplify(cache), right.simplify(cache));
+         cache.put(this, result);
+      }
+      return result;
+   }
+
+   /**
+    * @return the cost of evaluating both operands and applying the operator
+    */
+   public int cost() {
+      return cost;
+   }
+
+   /**
+    * @return the number of nodes in this expression and both operands
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * @param leftValue the value of the left operand
+    * @param rightValue the value of the right operand
+    * @return the result of applying this operator to the values
+    */
+   protected abstract int apply(int leftValue, int rightValue);
+
+   /**
+    * @return a string representing the operator
+    */
+   protected abstract String getOperator();     
+
+   /**
+    * @return a new Expression mathematically equivalent to this one, but simplified.
+    */
+   public Expression simplify() {
+      return simplify(left.simplify(), right.simplify());
+   }
+
+   /**
+    * Applies the simplifications of this operator to operands that are already simplified
+    * @param myLeft the simplified left operand
+    * @param myRight the simplified right operand
+    * @return a new Expression applying this operator to the operands, but simplified
+    */
+   protected abstract Expression simplify(Expression myLeft, Expression myRight);
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @param range receives the range of this expression in its first element
+    * @return the value of this expression if it is proven constant, otherwise this expression
+    *         with simplified operands, simplified
+    */
+   protected Expression simplify(Map<String, Interval> bounds, Interval[] range) {
+      Expression myLeft = left.simplify(bounds, range);
+      Interval leftRange = range[0];
+      Expression myRight = right.simplify(bounds, range);
+      Interval rightRange = range[0];
+
+      range[0] = range(leftRange, rightRange);
+      if(range[0].isConstant()) {
+         return new IntegerOperand(range[0].lo());
+      }
+      return simplify(myLeft, myRight);
+   }
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @return the Interval of values of the expression
+    */
+   public Interval range(Map<String, Interval> bounds) {
+      return range(left.range(bounds), right.range(bounds));
+   }
+
+   /**
+    * @param leftRange the range of the left operand
+    * @param rightRange the range of the right operand
+    * @return the range of applying this operator to the operands
+    */
+   protected abstract Interval range(Interval leftRange, Interval rightRange);
+   
+   /**
+    * Recursively prints the vertices and edges of the expression tree for visualization
+    * @param bw the BufferedWriter to write to
+    */
+   protected void drawExprHelper(BufferedWriter bw) throws IOException {
+      String rootID = "\tnode"+System.identityHashCode(this);
+      bw.write(rootID+"[label=\""+getOperator()+"\"];\n");
+
+      bw.write(rootID + " -- node" + System.identityHashCode(left) + ";\n");
+      bw.write(rootID + " -- node" + System.identityHashCode(right) + ";\n");
+      left.drawExprHelper(bw);
+      right.drawExprHelper(bw);
+   }   
+    
+    public Set<String> getVariables() {
+	    TreeSet<String> vars = new TreeSet<String>();
+	    vars.addAll(this.left.getVariables());
+	    vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
+	    return vars;
+    }
+
+   /**
+    * Rebalances with an explicit stack of pending operators instead of recursion, so a chain
+    * of any operator and any length is rebalanced without overflowing the call stack
+    * @return an equivalent Expression with balanced chains, sharing the subtrees that did not change
+    */
+   public Expression rebalance() {
+       Stack<Pending> pending = new Stack<Pending>();
+       pending.push(new Pending(this));
+
+       while(true) {
+	       Pending top = pending.peek();
+	       if(top.rebalanced.size() < top.operands.size()) {
+		       Expression operand = top.operands.get(top.rebalanced.size());
+		       if(operand instanceof OperatorExpression) {
+			       pending.push(new Pending((OperatorExpression) operand));
+			   } else {
+			       top.rebalanced.add(operand);
+			   }
+		   } else {
+		       Expression result = top.node.rebuild(top.operands, top.rebalanced);
+		       pending.pop();
+		       if(pending.empty()) {
+			       return result;
+			   }
+		       pending.peek().rebalanced.add(result);
+		   }
+	   }
+   }
+
+   /**
+    * An operator waiting for its operands to be rebalanced
+    */
+   private static class Pending {
+       final OperatorExpression node;
+       final List<Expression> operands;
+       final List<Expression> rebalanced;
+
+       Pending(OperatorExpression node) {
+	       this.node = node;
+	       this.operands = node.rebalanceOperands();
+	       this.rebalanced = new ArrayList<Expression>(operands.size());
+       }
+   }
+
+   /**
+    * @return the operands this operator is rebuilt from when rebalancing, left to right
+    */
+   protected List<Expression> rebalanceOperands() {
+       return Arrays.asList(left, right);
+   }
+
+   /**
+    * @param operands the operands given by rebalanceOperands()
+    * @param rebalanced the same operands, rebalanced
+    * @return this operator applied to the rebalanced operands, or this expression if none changed
+    */
+   protected Expression rebuild(List<Expression> operands, List<Expression> rebalanced) {
+       if(rebalanced.get(0) == left && rebalanced.get(1) == right) {
+	       return this;
+	   }
+       return makeExpression(rebalanced.get(0), rebalanced.get(1), getOperator());
+   }
+
+   /**
+    * Collects the operands of the run of this operator starting here, without recursing down the chain
+    * @return the operands of the nested operators of this class, left to right
+    */
+   protected List<Expression> runOperands() {
+       List<Expression> operands = new ArrayList<Expression>();
+       Stack<Expression> pending = new Stack<Expression>();
+       pending.push(this);
+       while(!pending.empty()) {
+	       Expression e = pending.pop();
+	       if(e.getClass() == getClass()) {
+		       pending.push(((OperatorExpression) e).right);
+		       pending.push(((OperatorExpression) e).left);
+		   } else {
+		       operands.add(e);
+		   }
+	   }
+       return operands;
+   }
+
+   /**
+    * @param rebalanced the rebalanced operands of the run starting here
+    * @return this expression if it already is the balanced tree over exactly those operands,
+    *         otherwise a new balanced tree
+    */
+   protected Expression rebuildRun(List<Expression> rebalanced) {
+       if(isBalanced(this, rebalanced, 0, rebalanced.size())) {
+	       return this; // nothing changed, share the whole run
+	   }
+       return balance(rebalanced, 0, rebalanced.size());
+   }
+
+   /**
+    * @param e a subtree of the run
+    * @param operands the operands of the run
+    * @param lo the index of the first operand e should combine
+    * @param hi one past the index of the last operand e should combine
+    * @return true if e has the shape balance(operands, lo, hi) builds, over the very same operands
+    */
+   private boolean isBalanced(Expression e, List<Expression> operands, int lo, int hi) {
+       if(hi - lo == 1) {
+	       return e == operands.get(lo);
+	   }
+       if(e.getClass() != getClass()) {
+	       return false;
+	   }
+       int mid = lo + (hi - lo + 1) / 2;
+       OperatorExpression o = (OperatorExpression) e;
+       return isBalanced(o.left, operands, lo, mid) && isBalanced(o.right, operands, mid, hi);
+   }
+
+   /**
+    * @param operands the operands of a run
+    * @param lo the index of the first operand to combine
+    * @param hi one past the index of the last operand to combine
+    * @return a balanced tree applying this operator to the operands from lo to hi
+    */
+   protected Expression balance(List<Expression> operands, int lo, int hi) {
+       if(hi - lo == 1) {
+	       return operands.get(lo);
+	   }
+       int mid = lo + (hi - lo + 1) / 2; // the larger half goes left, so short chains keep their shape
+       return makeExpression(balance(operands, lo, mid), balance(operands, mid, hi), getOperator());
+   }
+
+   /**
+    * @param replacements a Map from Strings (variable names) to Expressions
+    * @return an expression of the same operator over the edited operands, or this one if nothing changed
+    */
+   public Expression substitute(Map<String, ? extends Expression> replacements) {
+       Expression myLeft = left.substitute(replacements);
+       Expression myRight = right.substitute(replacements);
+
+       if(myLeft == left && myRight == right) {
+	       return this; // none of the variables occur below, share the whole subtree
+	   }
+       return makeExpression(myLeft, myRight, getOperator());
+   }
+}
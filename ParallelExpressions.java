@@ -0,0 +1,183 @@
+package com.maxim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join versions of simplify and evaluate for very large expressions.
+ *
+ * An operator whose operands both have at least threshold nodes simplifies or evaluates
+ * them in parallel; long spines with one small operand per level are walked with a loop,
+ * and smaller subtrees use the sequential methods. Subtree sizes are cached in the nodes,
+ * so deciding where to split is free. The results are identical to Expression.simplify()
+ * and Expression.evaluate().
+ */
+public class ParallelExpressions {
+
+   /**
+    * The default minimum subtree size worth splitting
+    */
+   public static final int DEFAULT_THRESHOLD = 10000;
+
+   private ParallelExpressions() {
+   }
+
+   /**
+    * @param expr the expression to simplify
+    * @return the same result as expr.simplify(), computed in the common fork-join pool
+    */
+   public static Expression simplify(Expression expr) {
+      return simplify(expr, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * @param expr the expression to simplify
+    * @param threshold the minimum subtree size simplified in parallel
+    * @param pool the pool to run in
+    * @return the same result as expr.simplify()
+    */
+   public static Expression simplify(Expression expr, int threshold, ForkJoinPool pool) {
+      return pool.invoke(new SimplifyTask(expr, threshold));
+   }
+
+   /**
+    * @param expr the expression to evaluate
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the same result as expr.evaluate(assignments), computed in the common fork-join pool
+    */
+   public static int evaluate(Expression expr, HashMap<String, Integer> assignments) {
+      return evaluate(expr, assignments, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * @param expr the expression to evaluate
+    * @param assignments a HashMap from Strings (variable names) to Integers (values), not modified while evaluating
+    * @param threshold the minimum subtree size evaluated in parallel
+    * @param pool the pool to run in
+    * @return the same result as expr.evaluate(assignments)
+    */
+   public static int evaluate(Expression expr, HashMap<String, Integer> assignments, int threshold, ForkJoinPool pool) {
+      return pool.invoke(new EvaluateTask(expr, assignments, threshold));
+   }
+
+   /**
+    * Computes a result bottom up, in parallel where both operands of an operator are large.
+    *
+    * Parser output is often a lopsided spine, such as the left-deep tree of x - x - ... - x,
+    * where every node is large but one operand is tiny. Forking there gives no parallelism
+    * and adds fork-join frames per level, so the task walks down such a spine with a loop,
+    * computing the small operands sequentially, and only forks where both operands have at
+    * least threshold nodes.
+    */
+   private abstract static class SpineTask<T> extends RecursiveTask<T> {
+      private static final long serialVersionUID = 1L;
+
+      final Expression expr;
+      final int threshold;
+
+      SpineTask(Expression expr, int threshold) {
+         this.expr = expr;
+         this.threshold = threshold;
+      }
+
+      /**
+       * @return the result for an expression, computed on this thread
+       */
+      abstract T sequential(Expression e);
+
+      /**
+       * @return the result for an operator given the results of its operands
+       */
+      abstract T combine(OperatorExpression o, T leftResult, T rightResult);
+
+      /**
+       * @return a task computing the result for an expression
+       */
+      abstract SpineTask<T> task(Expression e);
+
+      @Override
+      protected T compute() {
+         // walk down while only one operand is large enough to be worth splitting
+         List<OperatorExpression> spine = new ArrayList<OperatorExpression>();
+         List<Boolean> wentLeft = new ArrayList<Boolean>();
+         Expression e = expr;
+         while(e.size() >= threshold && e instanceof OperatorExpression) {
+            OperatorExpression o = (OperatorExpression) e;
+            if(o.left.size() >= threshold && o.right.size() >= threshold) {
+               break;
+            }
+            spine.add(o);
+            wentLeft.add(o.left.size() >= o.right.size());
+            e = wentLeft.get(wentLeft.size() - 1) ? o.left : o.right;
+         }
+
+         T result;
+         if(e.size() >= threshold && e instanceof OperatorExpression) {
+            OperatorExpression o = (OperatorExpression) e;
+            SpineTask<T> left = task(o.left);
+            left.fork();
+            T rightResult = task(o.right).compute();
+            result = combine(o, left.join(), rightResult);
+         } else {
+            result = sequential(e);
+         }
+
+         // and back up, combining with the small operands
+         for(int i = spine.size() - 1; i >= 0; i--) {
+            OperatorExpression o = spine.get(i);
+            if(wentLeft.get(i)) {
+               result = combine(o, result, sequential(o.right));
+            } else {
+               result = combine(o, sequential(o.left), result);
+            }
+         }
+         return result;
+      }
+   }
+
+   private static class SimplifyTask extends SpineTask<Expression> {
+      private static final long serialVersionUID = 1L;
+
+      SimplifyTask(Expression expr, int threshold) {
+         super(expr, threshold);
+      }
+
+      Expression sequential(Expression e) {
+         return e.simplify();
+      }
+
+      Expression combine(OperatorExpression o, Expression myLeft, Expression myRight) {
+         return o.simplify(myLeft, myRight);
+      }
+
+      SpineTask<Expression> task(Expression e) {
+         return new SimplifyTask(e, threshold);
+      }
+   }
+
+   private static class EvaluateTask extends SpineTask<Integer> {
+      private static final long serialVersionUID = 1L;
+
+      private final HashMap<String, Integer> assignments;
+
+      EvaluateTask(Expression expr, HashMap<String, Integer> assignments, int threshold) {
+         super(expr, threshold);
+         this.assignments = assignments;
+      }
+
+      Integer sequential(Expression e) {
+         return e.evaluate(assignments);
+      }
+
+      Integer combine(OperatorExpression o, Integer leftValue, Integer rightValue) {
+         return o.apply(leftValue, rightValue);
+      }
+
+      SpineTask<Integer> task(Expression e) {
+         return new EvaluateTask(e, assignments, threshold);
+      }
+   }
+}
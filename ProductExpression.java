@@ -0,0 +1,186 @@
+package com.maxim;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class representing an expression involving a product
+ */
+class ProductExpression extends OperatorExpression {
+
+   /**
+    * Create the expression
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    */
+   public ProductExpression(Expression left, Expression right)
+   {
+      super(left, right);
+   }
+
+   /**
+    * @return a string representing the operand
+    */
+   protected String getOperator()
+   {
+      return "*";
+   }
+
+   /**
+    * @return the operands of the whole run of products starting here, so it is rebalanced as one chain
+    */
+   protected List<Expression> rebalanceOperands() {
+       return runOperands();
+   }
+
+   /**
+    * @param operands the operands of the run
+    * @param rebalanced the same operands, rebalanced
+    * @return this expression if the run is already balanced and unchanged, otherwise
+    *         a balanced tree of products over the rebalanced operands
+    */
+   protected Expression rebuild(List<Expression> operands, List<Expression> rebalanced) {
+       return rebuildRun(rebalanced);
+   }
+
+   /**
+    * @return a String that represents this expression in prefix notation.
+    */   
+   public String toPrefix()
+   {
+       return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
+   }
+
+   /**
+    * @return a String that represents this expression in postfix notation.
+    */  
+   public String toPostfix()
+   {
+       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
+   }   
+
+   /**
+    * @return a String that represents the expression in infix notation
+    */
+   public String toInfix()
+   {
+       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
+   }
+
+   /**
+    * @param leftValue the value of the left operand
+    * @param rightValue the value of the right operand
+    * @return leftValue * rightValue
+    */
+   protected int apply(int leftValue, int rightValue) {
+       return leftValue * rightValue;
+   }
+
+   /**
+    * @param leftRange the range of the left operand
+    * @param rightRange the range of the right operand
+    * @return the range of the product of the operands
+    */
+   protected Interval range(Interval leftRange, Interval rightRange) {
+       return leftRange.multiply(rightRange);
+   }
+
+   /**
+    * @param myLeft the simplified left operand
+    * @param myRight the simplified right operand
+    * @return a new Expression equivalent to the product of the operands, but simplified
+    */  
+   protected Expression simplify(Expression myLeft, Expression myRight) {
+       if(myLeft instanceof IntegerOperand && myRight instanceof IntegerOperand) {
+	       IntegerOperand op1 = (IntegerOperand) myLeft;
+	       IntegerOperand op2 = (IntegerOperand) myRight;
+	       
+	       return new IntegerOperand(op1.operand * op2.operand);
+	   }
+
+       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
+	       IntegerOperand a = (IntegerOperand) myLeft;
+	       Expression expr = (Expression) myRight;
+
+	       if(a.operand == 1) {
+		       return expr; // if left is 1
+		   }
+
+	       if(a.operand == 0) {
+		       return new IntegerOperand(0); // if right is 0 simply return 0
+		   }
+	   }
+
+       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
+	       IntegerOperand b = (IntegerOperand) myRight;
+	       Expression expr1 = (Expression) myLeft;
+
+	       if(b.operand == 1) {
+		       return myLeft;
+		   }
+
+	       if(b.operand == 0) {
+		       return new IntegerOperand(0); // same but in reverse
+		   }
+	   }
+
+       return new ProductExpression(myLeft, myRight);
+   }   
+
+   /**
+    * Evaluates the expression given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+       return this.left.evaluate(assignments) * this.right.evaluate(assignments);
+   }
+
+   /**
+    * Evaluates the cheaper operand first and skips the other one if the first is 0
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluateShortCircuit(HashMap<String, Integer> assignments) {
+       Expression first = this.left;
+       Expression second = this.right;
+
+       if(second.cost() < first.cost()) {
+	       first = this.right;
+	       second = this.left;
+	   }
+
+       int a = first.evaluateShortCircuit(assignments);
+       if(a == 0) {
+	       return 0; // anything times 0 is 0
+	   }
+       return a * second.evaluateShortCircuit(assignments);
+   }
+
+   /**
+    * @return a Set of the variables contained in this expression
+    */
+   public Set<String> getVariables() {
+       TreeSet<String> vars = new TreeSet<String>();
+       vars.addAll(this.left.getVariables());
+       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
+       return vars;
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an IntegerOperand with the same associated value
+    */
+   @Override
+   public boolean equals(Object obj) {
+       if(obj == null || (!(obj instanceof ProductExpression)))
+           return false;
+      
+       ProductExpression sum = (ProductExpression) obj;
+
+       //check if ALL are equal
+       return this.left.equals(sum.left) && this.right.equals(sum.right) || sum.left.equals(this.left) && sum.right.equals(this.right);
+   }
+}
@@ -0,0 +1,161 @@
+package com.maxim;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class representing an expression involving a division
+ */
+class QuotientExpression extends OperatorExpression {
+
+   /**
+    * Create the expression
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    */
+   public QuotientExpression(Expression left, Expression right)
+   {
+      super(left, right);
+   }
+
+   /**
+    * @return a string representing the operand
+    */
+   protected String getOperator()
+   {
+      return "/";
+   }
+
+   /**
+    * @return a String that represents this expression in prefix notation.
+    */   
+   public String toPrefix()
+   {
+       return this.getOperator() + this.left.toPrefix() + this.right.toPrefix();
+   }
+
+   /**
+    * @return a String that represents this expression in postfix notation.
+    */  
+   public String toPostfix()
+   {
+       return this.left.toPostfix() + this.right.toPostfix() + this.getOperator();
+   }   
+
+   /**
+    * @return a String that represents the expression in infix notation
+    */
+   public String toInfix()
+   {
+       return "(" + this.left.toInfix() + this.getOperator() + this.right.toInfix() + ")";
+   }
+
+   /**
+    * @param leftValue the value of the left operand
+    * @param rightValue the value of the right operand
+    * @return leftValue / rightValue
+    */
+   protected int apply(int leftValue, int rightValue) {
+       return leftValue / rightValue;
+   }
+
+   /**
+    * @param leftRange the range of the left operand
+    * @param rightRange the range of the right operand
+    * @return the range of the quotient of the operands
+    */
+   protected Interval range(Interval leftRange, Interval rightRange) {
+       return leftRange.divide(rightRange);
+   }
+
+   /**
+    * @param myLeft the simplified left operand
+    * @param myRight the simplified right operand
+    * @return a new Expression equivalent to the quotient of the operands, but simplified.
+    */
+   protected Expression simplify(Expression myLeft, Expression myRight) {
+       // fold constants, but leave a division by zero to fail when evaluated
+       if(myLeft instanceof IntegerOperand && myRight instanceof IntegerOperand && ((IntegerOperand) myRight).operand != 0) {
+	       IntegerOperand op1 = (IntegerOperand) myLeft;
+	       IntegerOperand op2 = (IntegerOperand) myRight;
+	       
+	       return new IntegerOperand(op1.operand / op2.operand);
+	   }
+
+       else if(myLeft instanceof IntegerOperand && myRight instanceof Expression) {
+	       IntegerOperand a = (IntegerOperand) myLeft;
+	       Expression expr = (Expression) myRight;
+
+	       if(a.operand == 0) {
+		       return new IntegerOperand(0); // if left is 0 return 0
+		   }
+	   }
+
+       else if(myRight instanceof IntegerOperand && myLeft instanceof Expression) {
+	       IntegerOperand b = (IntegerOperand) myRight;
+	       Expression expr1 = (Expression) myLeft;
+
+	       if(b.operand == 1) {
+		       return myLeft; // if right is 1 return the left
+		   }
+	   }
+       
+       else if(myLeft instanceof VariableOperand && myRight instanceof VariableOperand) {
+	       VariableOperand var1 = (VariableOperand) myLeft;
+	       VariableOperand var2 = (VariableOperand) myRight;
+	       
+	       if(var1.equals(var2)) {
+		       return new IntegerOperand(1); // if both are same (even if variables) return 1
+		   }
+	   }
+       return new QuotientExpression(myLeft, myRight);
+   }   
+    
+   /**
+    * Evaluates the expression given assignments of values to variables.
+    * @param assignments a HashMap from Strings (variable names) to Integers (values).
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+       return this.left.evaluate(assignments) / this.right.evaluate(assignments);
+   }
+
+   /**
+    * Evaluates the divisor first so that a division by zero fails before the dividend is evaluated
+    * @param assignments a HashMap from Strings (variable names) to Integers (values).
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluateShortCircuit(HashMap<String, Integer> assignments) {
+       int divisor = this.right.evaluateShortCircuit(assignments);
+       if(divisor == 0) {
+	       throw new ArithmeticException("/ by zero");
+	   }
+       return this.left.evaluateShortCircuit(assignments) / divisor;
+   }
+
+   /**
+    * @return a Set of the variables contained in this expression
+    */
+   public Set<String> getVariables() {
+       TreeSet<String> vars = new TreeSet<String>();
+       vars.addAll(this.left.getVariables());
+       vars.addAll(this.right.getVariables());  //make a new tree and add all the lefts and rights
+       return vars;
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an IntegerOperand with the same associated value
+    */
+   @Override
+   public boolean equals(Object obj) {
+       if(obj == null || (!(obj instanceof QuotientExpression)))
+           return false;
+      
+       QuotientExpression sum = (QuotientExpression) obj;
+
+       // same as difference Expression
+       return this.left.equals(sum.left) && this.right.equals(sum.right);
+   }
+}
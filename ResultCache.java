@@ -0,0 +1,166 @@
+package com.maxim;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes the results of evaluating one expression, for workloads where the same
+ * assignments come back again and again.
+ *
+ * Results are keyed by the values of the expression's variables packed into an int[] in
+ * getVariables() order. The cache holds at most capacity results and evicts with the CLOCK
+ * algorithm: a hit marks its entry, and the eviction hand skips (and unmarks) marked entries.
+ * Lookups never lock; only inserting a new result does. Caching can be switched off, for
+ * instance when the hit rate shows the inputs rarely repeat.
+ *
+ * A ResultCache may be shared between threads.
+ */
+public class ResultCache {
+
+   private final Expression expr;
+   private final FormulaSet formula;
+   private final String[] variables;
+   private final ClockCache<Key, Integer> results;
+
+   private volatile boolean enabled = true;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   /**
+    * Create the cache
+    * @param expr the expression to evaluate
+    * @param capacity the maximum number of results kept
+    */
+   public ResultCache(Expression expr, int capacity) {
+      this.results = new ClockCache<Key, Integer>(capacity);
+      this.expr = expr;
+      this.formula = new FormulaSet(expr);
+      this.variables = formula.getVariables();
+   }
+
+   /**
+    * The packed variable values of an assignment
+    */
+   private static final class Key {
+      final int[] values;
+      final int hash;
+
+      Key(int[] values) {
+         this.values = values;
+         this.hash = Arrays.hashCode(values);
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+      }
+
+      @Override
+      public int hashCode() {
+         return hash;
+      }
+   }
+
+   /**
+    * @return the variables in the order used by evaluate(int[]), as given by getVariables()
+    */
+   public String[] getVariables() {
+      return variables.clone();
+   }
+
+   /**
+    * Evaluates the expression given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+      if(!enabled) {
+         return expr.evaluate(assignments);
+      }
+
+      int[] values = new int[variables.length];
+      for(int i = 0; i < values.length; i++) {
+         values[i] = assignments.get(variables[i]);
+      }
+      return lookup(values, false);
+   }
+
+   /**
+    * Evaluates the expression given the values of the variables
+    * @param values the value of each variable, in getVariables() order; not kept by the cache
+    * @return the result of evaluating the expression with the given values
+    */
+   public int evaluate(int[] values) {
+      if(!enabled) {
+         return formula.evaluate(values)[0];
+      }
+      return lookup(values, true);
+   }
+
+   /**
+    * @param values the value of each variable
+    * @param shared true if values belongs to the caller and must be copied before it is kept
+    * @return the cached or newly computed result
+    */
+   private int lookup(int[] values, boolean shared) {
+      Key key = new Key(values);
+      Integer cached = results.get(key);
+      if(cached != null) {
+         hits.increment();
+         return cached;
+      }
+
+      misses.increment();
+      int result = formula.evaluate(values)[0];
+      results.putIfAbsent(shared ? new Key(values.clone()) : key, result);
+      return result;
+   }
+
+   /**
+    * Turns caching on or off; while off, every call evaluates the expression directly
+    * @param enabled true to use the cache
+    */
+   public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+   }
+
+   /**
+    * @return true if results are being cached
+    */
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * Removes every cached result and resets the hit and miss counts
+    */
+   public void clear() {
+      results.clear();
+      hits.reset();
+      misses.reset();
+   }
+
+   /**
+    * @return the number of evaluations answered from the cache
+    */
+   public long hits() {
+      return hits.sum();
+   }
+
+   /**
+    * @return the number of evaluations that had to compute their result
+    */
+   public long misses() {
+      return misses.sum();
+   }
+
+   /**
+    * @return the fraction of cached evaluations answered from the cache, or 0 if there were none
+    */
+   public double hitRate() {
+      long h = hits.sum();
+      long total = h + misses.sum();
+      return total == 0 ? 0.0 : (double) h / total;
+   }
+}
@@ -0,0 +1,173 @@
+package com.maxim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A randomized test of the rewrites: simplify(), simplify(bounds), specialize,
+ * simplify(SimplifyCache), rebalance(), FormulaSet and the two postfix parsers.
+ *
+ * Random expressions over small constants (so 0 and 1 come up often) and a few variables
+ * are rewritten, and each rewrite is evaluated against the original under random
+ * assignments. A simplification may remove a division by zero, so only assignments the
+ * original evaluates count for it; rebalance() and FormulaSet must also fail exactly when
+ * the original does. The exit status is 1 if any rewrite gave a different answer.
+ *
+ * To run: java RewriteTest [expressions] [seed]
+ */
+public class RewriteTest {
+
+   private static final String[] VARIABLES = {"x", "y", "z"};
+   private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+   private static final Random random = new Random();
+   private static int failures;
+
+   public static void main(String[] args) {
+      int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+      random.setSeed(args.length > 1 ? Long.parseLong(args[1]) : 33);
+
+      int[] wrong = new int[8];
+      String[] names = {"simplify()", "simplify(bounds)", "specialize", "simplify(SimplifyCache)",
+                        "rebalance()", "rebalance() shares unchanged trees", "FormulaSet", "postfix parsers agree"};
+      SimplifyCache cache = new SimplifyCache(256);
+
+      for(int t = 0; t < count; t++) {
+         Expression e = randomExpression(5);
+         HashMap<String, Integer> assignment = randomAssignment();
+         Integer expected = evaluate(e, assignment);
+
+         // the rewrites may only differ where the original fails
+         if(expected != null) {
+            Map<String, Interval> bounds = new HashMap<String, Interval>();
+            bounds.put("x", Interval.constant(assignment.get("x")));
+            bounds.put("y", Interval.of(assignment.get("y") - random.nextInt(3), assignment.get("y") + random.nextInt(3)));
+            Map<String, Integer> known = new HashMap<String, Integer>();
+            known.put("z", assignment.get("z"));
+
+            wrong[0] += expected.equals(evaluate(e.simplify(), assignment)) ? 0 : 1;
+            wrong[1] += expected.equals(evaluate(e.simplify(bounds), assignment)) ? 0 : 1;
+            wrong[2] += expected.equals(evaluate(e.specialize(known), assignment)) ? 0 : 1;
+            wrong[3] += expected.equals(evaluate(e.simplify(cache), assignment)) ? 0 : 1;
+         }
+
+         // the exact rewrites must also fail exactly where the original does
+         Expression balanced = e.rebalance();
+         wrong[4] += same(expected, evaluate(balanced, assignment)) ? 0 : 1;
+         wrong[5] += balanced.rebalance() == balanced ? 0 : 1;
+
+         Integer flat;
+         try {
+            flat = new FormulaSet(e, e.rebalance()).evaluate(assignment)[1];
+         } catch(ArithmeticException ex) {
+            flat = null;
+         }
+         wrong[6] += same(expected, flat) ? 0 : 1;
+
+         // expressionFromPostfix has no answer for a lone operand, so only operators are compared
+         if(e instanceof OperatorExpression) {
+            List<String> postfix = new ArrayList<String>();
+            postfixTokens(e, postfix);
+            ExpressionBuilder builder = ExpressionBuilder.postfix();
+            for(String token : postfix) {
+               builder.accept(token);
+            }
+            Expression parsed = Expression.expressionFromPostfix(postfix.toArray(new String[0]));
+            wrong[7] += parsed.equals(e) && builder.finish().equals(e) ? 0 : 1;
+         }
+      }
+
+      System.out.println(count + " random expressions:");
+      for(int i = 0; i < names.length; i++) {
+         report(names[i], wrong[i]);
+      }
+      report("simplify(SimplifyCache) after replaceAt edits", edits(count / 4));
+
+      System.out.println(failures == 0 ? "all checks passed" : failures + " checks FAILED");
+      System.exit(failures == 0 ? 0 : 1);
+   }
+
+   /**
+    * Edits one formula many times with replaceAt, simplifying each version through a small
+    * shared cache
+    * @return the number of versions whose cached simplification differs from simplify()
+    */
+   private static int edits(int count) {
+      SimplifyCache cache = new SimplifyCache(64);  // small enough to keep evicting
+      Expression e = randomExpression(6);
+      int wrong = 0;
+
+      for(int i = 0; i < count; i++) {
+         StringBuilder path = new StringBuilder();
+         Expression at = e;
+         while(at instanceof OperatorExpression && random.nextInt(4) > 0) {
+            boolean left = random.nextBoolean();
+            path.append(left ? 'L' : 'R');
+            at = left ? ((OperatorExpression) at).left : ((OperatorExpression) at).right;
+         }
+         e = e.replaceAt(path.toString(), randomExpression(2));
+         if(e.size() > 500) {
+            e = randomExpression(6);
+         }
+         if(!e.simplify(cache).equals(e.simplify())) {
+            wrong++;
+         }
+      }
+      return wrong;
+   }
+
+   private static void report(String name, int wrong) {
+      if(wrong > 0) {
+         failures++;
+      }
+      System.out.printf("   %-46s %s%n", name, wrong == 0 ? "ok" : "FAILED, " + wrong + " wrong answers");
+   }
+
+   /**
+    * @return the value of e, or null if evaluating it divides by zero
+    */
+   private static Integer evaluate(Expression e, HashMap<String, Integer> assignment) {
+      try {
+         return e.evaluate(assignment);
+      } catch(ArithmeticException ex) {
+         return null;
+      }
+   }
+
+   private static boolean same(Integer a, Integer b) {
+      return a == null ? b == null : a.equals(b);
+   }
+
+   private static Expression randomExpression(int depth) {
+      if(depth == 0 || random.nextInt(4) == 0) {
+         if(random.nextBoolean()) {
+            return new VariableOperand(VARIABLES[random.nextInt(VARIABLES.length)]);
+         }
+         return new IntegerOperand(random.nextInt(6) - 1);
+      }
+      return Expression.makeExpression(randomExpression(depth - 1), randomExpression(depth - 1),
+                                       OPERATORS[random.nextInt(OPERATORS.length)]);
+   }
+
+   private static HashMap<String, Integer> randomAssignment() {
+      HashMap<String, Integer> assignment = new HashMap<String, Integer>();
+      for(String v : VARIABLES) {
+         assignment.put(v, random.nextInt(7) - 3);
+      }
+      return assignment;
+   }
+
+   private static void postfixTokens(Expression e, List<String> tokens) {
+      if(e instanceof OperatorExpression) {
+         OperatorExpression o = (OperatorExpression) e;
+         postfixTokens(o.left, tokens);
+         postfixTokens(o.right, tokens);
+         tokens.add(o.getOperator());
+      } else {
+         tokens.add(e.toString());
+      }
+   }
+}
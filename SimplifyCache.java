@@ -0,0 +1,74 @@
+package com.maxim;
+
+/**
+ * Simplified expressions keyed by the fingerprint of the expression they came from, kept
+ * between calls to Expression.simplify(SimplifyCache) so that edited formulas only
+ * simplify the parts that changed.
+ *
+ * The cache holds at most maxEntries results and evicts the least recently useful ones with
+ * the CLOCK algorithm, so the subtrees shared by successive edits stay cached however many
+ * edits are made. Each result is stored with the expression it came from, and a lookup only
+ * succeeds if that expression is the one asked about or equal to it, so a fingerprint
+ * collision costs a cache miss, never a wrong answer. Edits made with replaceAt and
+ * substitute share their unchanged subtrees, which pass the check by identity without
+ * comparing trees. A cache may be shared between threads.
+ */
+public class SimplifyCache {
+
+   /**
+    * A simplified result and the expression it was computed from
+    */
+   private static final class Result {
+      final Expression source;
+      final Expression simplified;
+
+      Result(Expression source, Expression simplified) {
+         this.source = source;
+         this.simplified = simplified;
+      }
+   }
+
+   private final ClockCache<Long, Result> results;
+
+   /**
+    * Create the cache
+    * @param maxEntries the maximum number of results kept
+    */
+   public SimplifyCache(int maxEntries) {
+      this.results = new ClockCache<Long, Result>(maxEntries);
+   }
+
+   /**
+    * @param expr an expression
+    * @return its simplified form, or null if it is not cached
+    */
+   Expression get(Expression expr) {
+      Result result = results.get(expr.fingerprint());
+      if(result == null || (result.source != expr && !result.source.equals(expr))) {
+         return null;
+      }
+      return result.simplified;
+   }
+
+   /**
+    * @param expr an expression
+    * @param simplified its simplified form
+    */
+   void put(Expression expr, Expression simplified) {
+      results.putIfAbsent(expr.fingerprint(), new Result(expr, simplified));
+   }
+
+   /**
+    * @return the number of cached results
+    */
+   public int size() {
+      return results.size();
+   }
+
+   /**
+    * Removes every cached result
+    */
+   public void clear() {
+      results.clear();
+   }
+}
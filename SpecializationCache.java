@@ -0,0 +1,66 @@
+package com.maxim;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Specializations of one expression, for callers that fix the same variables to the same
+ * values again and again. Results are keyed by the values given to the expression's own
+ * variables, so bindings of unrelated variables share an entry.
+ *
+ * The cache holds at most capacity specializations and evicts with the CLOCK algorithm.
+ * It lives outside the expression, which stays immutable. A SpecializationCache may be
+ * shared between threads.
+ */
+public class SpecializationCache {
+
+   private final Expression expr;
+   private final Set<String> variables;
+   private final ClockCache<Map<String, Integer>, Expression> results;
+
+   /**
+    * Create the cache
+    * @param expr the expression to specialize
+    * @param capacity the maximum number of specializations kept
+    */
+   public SpecializationCache(Expression expr, int capacity) {
+      this.results = new ClockCache<Map<String, Integer>, Expression>(capacity);
+      this.expr = expr;
+      this.variables = expr.getVariables();
+   }
+
+   /**
+    * @param known a Map from Strings (variable names) to Integers (values) for the fixed variables
+    * @return the same result as expr.specialize(known), from the cache if it was computed before
+    */
+   public Expression specialize(Map<String, Integer> known) {
+      TreeMap<String, Integer> key = new TreeMap<String, Integer>();
+      for(String v : variables) {
+         Integer value = known.get(v);
+         if(value != null) {
+            key.put(v, value);
+         }
+      }
+
+      Expression result = results.get(key);
+      if(result == null) {
+         result = results.putIfAbsent(key, expr.specialize(key));
+      }
+      return result;
+   }
+
+   /**
+    * @return the number of cached specializations
+    */
+   public int size() {
+      return results.size();
+   }
+
+   /**
+    * Removes every cached specialization
+    */
+   public void clear() {
+      results.clear();
+   }
+}
@@ -0,0 +1,217 @@
+package com.maxim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A concurrency stress test for the classes documented as safe to share between threads:
+ * Expression trees, EvaluationServer, ParallelExpressions, SimplifyCache, ResultCache and
+ * AdaptiveExpression. Every check runs the same work from many threads at once against one
+ * shared instance and compares each answer with a reference computed on a single thread.
+ *
+ * The checks run on platform threads, then again on virtual threads when the runtime has
+ * them. The exit status is 1 if any answer differed or threw.
+ *
+ * To run: java StressTest [threads] [rounds per thread] [nodes]
+ */
+public class StressTest {
+
+   private static final String[] VARIABLES = {"a", "b", "c", "d", "e"};
+
+   private static int failures;
+
+   public static void main(String[] args) throws Exception {
+      int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+      int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+      int nodes = args.length > 2 ? Integer.parseInt(args[2]) : 20001;
+
+      Random random = new Random(26);
+      Expression tree = randomExpression(random, nodes);
+      Expression small = randomExpression(random, 301);   // small enough for the compiled tier
+
+      List<HashMap<String, Integer>> assignments = new ArrayList<HashMap<String, Integer>>();
+      for(int i = 0; i < 256; i++) {
+         HashMap<String, Integer> assignment = new HashMap<String, Integer>();
+         for(String v : VARIABLES) {
+            assignment.put(v, random.nextInt(41) - 20);
+         }
+         assignments.add(assignment);
+      }
+
+      ExecutorService platform = Executors.newFixedThreadPool(threads);
+      run(platform, threads + " platform threads", threads, rounds, tree, small, assignments);
+      platform.shutdown();
+
+      ExecutorService virtual = virtualThreadExecutor();
+      if(virtual == null) {
+         System.out.println("virtual threads are not available, skipped");
+      } else {
+         run(virtual, (threads * 8) + " virtual threads", threads * 8, rounds, tree, small, assignments);
+         virtual.shutdown();
+      }
+
+      System.out.println(failures == 0 ? "all checks passed" : failures + " checks FAILED");
+      System.exit(failures == 0 ? 0 : 1);
+   }
+
+   /**
+    * Runs every check with the given executor
+    */
+   private static void run(ExecutorService executor, String label, int threads, int rounds, Expression tree,
+                           Expression small, List<HashMap<String, Integer>> assignments) throws Exception {
+      System.out.println(label + ":");
+      int n = assignments.size();
+
+      // references, computed before any thread shares the objects
+      int[] values = new int[n];
+      int[] shortCircuit = new int[n];
+      int[] smallValues = new int[n];
+      for(int i = 0; i < n; i++) {
+         values[i] = tree.evaluate(assignments.get(i));
+         shortCircuit[i] = tree.evaluateShortCircuit(assignments.get(i));
+         smallValues[i] = small.evaluate(assignments.get(i));
+      }
+      Expression simplified = tree.simplify();
+
+      String[] requests = new String[n];
+      String[] responses = new String[n];
+      EvaluationServer reference = new EvaluationServer(0);
+      for(int i = 0; i < n; i++) {
+         requests[i] = "EVAL infix a * " + (i % 64) + " - ( b + c ) * d / " + (i % 7 + 1) + " + e " + assignment(assignments.get(i));
+         responses[i] = reference.respond(requests[i]);
+      }
+
+      check(executor, "Expression evaluate and evaluateShortCircuit", threads, rounds, i -> {
+         HashMap<String, Integer> assignment = assignments.get(i % n);
+         return tree.evaluate(assignment) == values[i % n] && tree.evaluateShortCircuit(assignment) == shortCircuit[i % n];
+      });
+
+      check(executor, "Expression simplify", threads, Math.max(1, rounds / 50), i -> {
+         Expression s = tree.simplify();
+         return s.fingerprint() == simplified.fingerprint() && s.equals(simplified);
+      });
+
+      EvaluationServer server = new EvaluationServer(0);
+      check(executor, "EvaluationServer respond", threads, rounds, i -> server.respond(requests[i % n]).equals(responses[i % n]));
+
+      ForkJoinPool pool = new ForkJoinPool(Math.max(2, threads / 2));
+      check(executor, "ParallelExpressions evaluate", threads, Math.max(1, rounds / 10), i ->
+         ParallelExpressions.evaluate(tree, assignments.get(i % n), 1000, pool) == values[i % n]);
+      check(executor, "ParallelExpressions simplify", threads, Math.max(1, rounds / 50), i ->
+         ParallelExpressions.simplify(tree, 1000, pool).equals(simplified));
+      pool.shutdown();
+
+      SimplifyCache simplifyCache = new SimplifyCache(tree.size() / 4);  // small enough to keep evicting
+      check(executor, "SimplifyCache", threads, Math.max(1, rounds / 50), i -> tree.simplify(simplifyCache).equals(simplified));
+
+      ResultCache results = new ResultCache(small, n / 4);               // small enough to keep evicting
+      check(executor, "ResultCache", threads, rounds * 10, i -> results.evaluate(assignments.get(i % n)) == smallValues[i % n]);
+
+      AdaptiveExpression adaptive = new AdaptiveExpression(small, 500, 5000);
+      check(executor, "AdaptiveExpression", threads, rounds * 50, i -> adaptive.evaluate(assignments.get(i % n)) == smallValues[i % n]);
+      System.out.println("   AdaptiveExpression ended in tier " + adaptive.getTier());
+   }
+
+   /**
+    * A check on one shared object: answer(i) must be true for every round of every thread
+    */
+   private interface Round {
+      boolean answer(int i);
+   }
+
+   /**
+    * Runs rounds of a check on every thread at once, after a common start signal
+    */
+   private static void check(ExecutorService executor, String name, int threads, int rounds, Round round) throws Exception {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+      for(int t = 0; t < threads; t++) {
+         final int offset = t * 31;  // threads start at different assignments
+         Callable<Integer> task = () -> {
+            start.await();
+            int wrong = 0;
+            for(int i = 0; i < rounds; i++) {
+               try {
+                  if(!round.answer(offset + i)) {
+                     wrong++;
+                  }
+               } catch(RuntimeException e) {
+                  wrong++;  // an exception is a wrong answer too
+               }
+            }
+            return wrong;
+         };
+         results.add(executor.submit(task));
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      int wrong = 0;
+      for(Future<Integer> f : results) {
+         wrong += f.get();
+      }
+      long elapsed = System.nanoTime() - begin;
+
+      if(wrong > 0) {
+         failures++;
+      }
+      System.out.printf("   %-46s %s (%d rounds, %.0f ms)%n", name, wrong == 0 ? "ok" : "FAILED, " + wrong + " wrong answers",
+                        (long) threads * rounds, elapsed / 1e6);
+   }
+
+   /**
+    * @return an executor starting one virtual thread per task, or null if the runtime has no virtual threads
+    */
+   private static ExecutorService virtualThreadExecutor() {
+      try {
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch(ReflectiveOperationException e) {
+         return null;
+      }
+   }
+
+   /**
+    * @param random the source of the shape, operators and operands
+    * @param nodes roughly the number of nodes
+    * @return a random expression that never divides by zero
+    */
+   private static Expression randomExpression(Random random, int nodes) {
+      // built bottom up from a list of operands, so no recursion as deep as the tree
+      List<Expression> pending = new ArrayList<Expression>();
+      for(int i = 0; i < (nodes + 1) / 2; i++) {
+         if(random.nextBoolean()) {
+            pending.add(new VariableOperand(VARIABLES[random.nextInt(VARIABLES.length)]));
+         } else {
+            pending.add(new IntegerOperand(random.nextInt(10)));
+         }
+      }
+      String[] operators = {"+", "-", "*"};
+      while(pending.size() > 1) {
+         int i = random.nextInt(pending.size() - 1);
+         Expression right = pending.remove(i + 1);
+         Expression left = pending.get(i);
+         if(random.nextInt(8) == 0) {
+            left = Expression.makeExpression(left, new IntegerOperand(random.nextInt(9) + 1), "/");  // never divides by zero
+         }
+         pending.set(i, Expression.makeExpression(left, right, operators[random.nextInt(operators.length)]));
+      }
+      return pending.get(0);
+   }
+
+   private static String assignment(HashMap<String, Integer> assignment) {
+      StringBuilder s = new StringBuilder();
+      for(String v : VARIABLES) {
+         s.append(v).append('=').append(assignment.get(v)).append(' ');
+      }
+      return s.toString().trim();
+   }
+}
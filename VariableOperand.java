@@ -0,0 +1,180 @@
+package com.maxim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class representing an expression containing only a single variable
+ */
+class VariableOperand extends Operand {
+   protected final String variable;
+   private final long fingerprint;
+
+   /**
+    * Create the expression
+    * @param variable the variable name contained with this expression
+    */
+   public VariableOperand(String variable)
+   {
+      this.variable = variable;
+
+      long h = 0x5be0cd19137e2179L;
+      for(int i = 0; i < variable.length(); i++) {
+         h = mix(h ^ variable.charAt(i));
+      }
+      this.fingerprint = h;
+   }
+
+   /**
+    * @return a String that represents this expression in prefix notation
+    */   
+   public String toPrefix() {
+       return variable;
+   }
+    
+    /**
+     * @return a String that represents this expression in postfix notation
+     */  
+    public String toPostfix() {
+        return variable;
+    }   
+
+    /**
+     * @return a String that represents the expression in infix notation
+     */
+    public String toInfix() {
+        return variable;
+    }
+
+   /**
+    * @return a new Expression mathematically equivalent to this one, but simplified
+    */  
+   public Expression simplify() {
+       return new VariableOperand(variable);
+   }   
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @param range receives the range of this expression in its first element
+    * @return the value of the variable if its bounds allow only one, otherwise the variable
+    */
+   protected Expression simplify(Map<String, Interval> bounds, Interval[] range) {
+       range[0] = range(bounds);
+       if(range[0].isConstant()) {
+	       return new IntegerOperand(range[0].lo());
+	   }
+       return simplify();
+   }
+
+   /**
+    * @param bounds a Map from Strings (variable names) to Intervals
+    * @return the bounds of the variable, or every int if it has none
+    */
+   public Interval range(Map<String, Interval> bounds) {
+       Interval r = bounds.get(variable);
+       if(r == null) {
+           return Interval.ALL;
+       }
+       return r;
+   }
+
+   /**
+    * Evaluates the expression given assignments of values to variables
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments) {
+       return assignments.get(variable);
+   }
+
+   /**
+    * @param assignments a HashMap from Strings (variable names) to Integers (values)
+    * @return the value assigned to the variable
+    */
+   public int evaluateShortCircuit(HashMap<String, Integer> assignments) {
+       return assignments.get(variable);
+   }
+
+   /**
+    * @return the cost of looking up a variable, which is higher than reading a constant
+    */
+   public int cost() {
+       return 2;
+   }
+
+   /**
+    * @return 1, for the operand itself
+    */
+   public int size() {
+       return 1;
+   }
+
+   /**
+    * @return this operand, which has no chains to balance
+    */
+   public Expression rebalance() {
+       return this;
+   }
+
+   /**
+    * @param replacements a Map from Strings (variable names) to Expressions
+    * @return the replacement of this variable, or this operand if it has none
+    */
+   public Expression substitute(Map<String, ? extends Expression> replacements) {
+       Expression replacement = replacements.get(variable);
+       if(replacement == null) {
+           return this;
+       }
+       return replacement;
+   }
+
+   /**
+    * @return a Set of the variables contained in this expression
+    */
+   public Set<String> getVariables() {
+       TreeSet<String> vars = new TreeSet<String>();
+       vars.add(variable);
+       return vars;
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an IntegerOperand with the same associated value
+    */
+   @Override
+   public boolean equals(Object obj) {
+       if(obj == null || !((obj) instanceof VariableOperand)) {
+	       return false;
+	   }
+       VariableOperand var = (VariableOperand) obj;
+       
+       return var.variable.equals(this.variable); //same as with integer but comparing vars
+   }   
+
+   /**
+    * @return a hash code of the variable name
+    */
+   @Override
+   public int hashCode() {
+       return variable.hashCode();
+   }
+
+   /**
+    * @return the fingerprint of the variable name
+    */
+   public long fingerprint() {
+       return fingerprint;
+   }
+
+   /**
+    * Recursively prints the vertices and edges of the expression tree for visualization
+    * @param bw the BufferedWriter to write to
+    */
+   protected void drawExprHelper(BufferedWriter bw) throws IOException {
+      bw.write("\tnode"+System.identityHashCode(this)+"[label="+variable+"];\n");
+   }   
+}